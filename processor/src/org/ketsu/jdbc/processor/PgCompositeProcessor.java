@@ -0,0 +1,531 @@
+package org.ketsu.jdbc.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+import org.ketsu.jdbc.PgComposite;
+import org.ketsu.jdbc.PgField;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Generates a codec class for every record with {@link PgComposite}, so
+ * composite values can be mapped without runtime code generation, e.g for
+ * short-lived processes or native images.
+ *
+ * For a record User the generated UserCodec has decode(UDTValue) and
+ * decodeAll(UDTValue) on the read side, encode(User) returning a CustomType,
+ * an ArrayBuilder and toArray(Collection) on the write side.
+ */
+@SupportedAnnotationTypes({"org.ketsu.jdbc.PgComposite", "org.ketsu.jdbc.PgField"})
+public class PgCompositeProcessor extends AbstractProcessor
+{
+	/**
+	 * Boxed element types of the lists in the codec being generated, which get a reader method each
+	 */
+	protected final Set<String> boxedLists = new LinkedHashSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env)
+	{
+		for(Element e : env.getElementsAnnotatedWith(PgComposite.class))
+		{
+			if(e.getKind() != ElementKind.RECORD)
+			{
+				error(e, "@PgComposite is only supported on records");
+				continue;
+			}
+
+			try
+			{
+				generate((TypeElement) e);
+			}
+			catch(IllegalArgumentException ex)
+			{
+				error(e, ex.getMessage());
+			}
+			catch(IOException ex)
+			{
+				error(e, "Cannot write the codec: "+ex);
+			}
+		}
+
+		return true;
+	}
+
+	protected void generate(TypeElement record) throws IOException
+	{
+		String pkg = packageOf(record);
+		String codec = codecName(record);
+		String type = record.getQualifiedName().toString();
+		String typeName = record.getAnnotation(PgComposite.class).value();
+
+		List<? extends RecordComponentElement> components = record.getRecordComponents();
+		boxedLists.clear();
+		int[] positions = new int[components.size()];
+		int last = 0;
+
+		for(int i = 0; i < components.size(); i++)
+		{
+			positions[i] = position(record, components.get(i), i + 1);
+			last = Math.max(last, positions[i]);
+		}
+
+		StringBuilder b = new StringBuilder();
+
+		if(!pkg.isEmpty())
+		{
+			b.append("package ").append(pkg).append(";\n\n");
+		}
+
+		b.append("import java.util.ArrayList;\n");
+		b.append("import java.util.Collection;\n");
+		b.append("import java.util.List;\n\n");
+		b.append("import org.ketsu.jdbc.CustomType;\n");
+		b.append("import org.ketsu.jdbc.CustomTypeArray;\n");
+		b.append("import org.ketsu.jdbc.CustomTypeArrayBuilder;\n");
+		b.append("import org.ketsu.jdbc.UDTValue;\n\n");
+		b.append("/**\n");
+		b.append(" * Codec of the ").append(typeName).append(" composite type for {@link ").append(type).append("}, generated from @PgComposite.\n");
+		b.append(" */\n");
+		b.append("public final class ").append(codec).append("\n{\n");
+		b.append("\tpublic static final String TYPE_NAME = \"").append(typeName.replace("\\", "\\\\").replace("\"", "\\\"")).append("\";\n\n");
+
+		b.append("\tprivate ").append(codec).append("()\n\t{\n\t\t//\n\t}\n\n");
+
+		b.append("\tpublic static ").append(type).append(" decode(UDTValue v)\n\t{\n");
+		b.append("\t\tif(v == null || v.isNull())\n\t\t{\n\t\t\treturn null;\n\t\t}\n\n");
+		b.append("\t\treturn new ").append(type).append("(");
+
+		for(int i = 0; i < components.size(); i++)
+		{
+			b.append(i == 0 ? "\n\t\t\t" : ",\n\t\t\t").append(read(components.get(i).asType(), positions[i]));
+		}
+
+		b.append(");\n\t}\n\n");
+
+		b.append("\tpublic static List<").append(type).append("> decodeAll(UDTValue array)\n\t{\n");
+		b.append("\t\tif(array == null || array.isNull())\n\t\t{\n\t\t\treturn null;\n\t\t}\n\n");
+		b.append("\t\tList<").append(type).append("> ret = new ArrayList<").append(type).append(">(array.getSize());\n\n");
+		b.append("\t\tfor(UDTValue v : array)\n\t\t{\n\t\t\tret.add(decode(v));\n\t\t}\n\n");
+		b.append("\t\treturn ret;\n\t}\n\n");
+
+		for(String boxed : boxedLists)
+		{
+			// NULL elements stay null, the collection getters would read them as 0 or false
+			b.append("\tprivate static List<").append(boxed).append("> read").append(boxed).append("s(UDTValue array)\n\t{\n");
+			b.append("\t\tif(array == null || array.isNull())\n\t\t{\n\t\t\treturn null;\n\t\t}\n\n");
+			b.append("\t\tList<").append(boxed).append("> ret = new ArrayList<").append(boxed).append(">(array.getSize());\n\n");
+			b.append("\t\tfor(int i = 1; i <= array.getSize(); i++)\n\t\t{\n");
+			b.append("\t\t\tret.add(array.isNull(i) ? null : array.get").append(boxed.equals("Integer") ? "Int" : boxed).append("(i));\n\t\t}\n\n");
+			b.append("\t\treturn ret;\n\t}\n\n");
+		}
+
+		b.append("\tpublic static CustomType encode(").append(type).append(" value)\n\t{\n");
+		b.append("\t\tif(value == null)\n\t\t{\n\t\t\treturn null;\n\t\t}\n\n");
+		b.append("\t\tCustomType t = new CustomType();\n\n");
+
+		for(int which = 1; which <= last; which++)
+		{
+			int i = indexOf(positions, which);
+
+			if(i < 0)
+			{
+				// every field has to be set, unset ones are left out
+				b.append("\t\tt.set(").append(which).append(", (Object) null);\n");
+			}
+			else
+			{
+				b.append("\t\t").append(write(components.get(i).asType(), which, "value." + components.get(i).getSimpleName() + "()")).append(";\n");
+			}
+		}
+
+		b.append("\n\t\treturn t;\n\t}\n\n");
+
+		b.append("\tpublic static ArrayBuilder builder(Collection<? extends ").append(type).append("> values)\n\t{\n");
+		b.append("\t\tif(values == null)\n\t\t{\n\t\t\treturn null;\n\t\t}\n\n");
+		b.append("\t\tArrayBuilder ret = new ArrayBuilder();\n\n");
+		b.append("\t\tfor(").append(type).append(" value : values)\n\t\t{\n\t\t\tret.add(value);\n\t\t}\n\n");
+		b.append("\t\treturn ret;\n\t}\n\n");
+
+		b.append("\tpublic static CustomTypeArray toArray(Collection<? extends ").append(type).append("> values)\n\t{\n");
+		b.append("\t\treturn values == null ? null : builder(values).getArray();\n\t}\n\n");
+
+		b.append("\tpublic static class ArrayBuilder extends CustomTypeArrayBuilder\n\t{\n");
+		b.append("\t\tpublic ArrayBuilder()\n\t\t{\n\t\t\tsuper(TYPE_NAME);\n\t\t}\n\n");
+		b.append("\t\tpublic void add(").append(type).append(" value)\n\t\t{\n\t\t\taddItem(encode(value));\n\t\t}\n\t}\n");
+		b.append("}\n");
+
+		try(Writer w = processingEnv.getFiler().createSourceFile(pkg.isEmpty() ? codec : pkg + "." + codec, record).openWriter())
+		{
+			w.write(b.toString());
+		}
+	}
+
+	/**
+	 * @return the position from {@link PgField} of the component, which ends up on the field of the record
+	 */
+	protected int position(TypeElement record, RecordComponentElement component, int position)
+	{
+		for(Element e : record.getEnclosedElements())
+		{
+			if(e.getKind() == ElementKind.FIELD && e.getSimpleName().equals(component.getSimpleName()))
+			{
+				PgField field = e.getAnnotation(PgField.class);
+
+				if(field != null && field.value() > 0)
+				{
+					return field.value();
+				}
+			}
+		}
+
+		return position;
+	}
+
+	protected static int indexOf(int[] positions, int which)
+	{
+		int ret = -1;
+
+		for(int i = 0; i < positions.length; i++)
+		{
+			if(positions[i] == which)
+			{
+				if(ret >= 0)
+				{
+					throw new IllegalArgumentException("Duplicate position "+which);
+				}
+
+				ret = i;
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * @return the expression reading the field from the UDTValue v
+	 */
+	protected String read(TypeMirror type, int which)
+	{
+		switch(type.getKind())
+		{
+			case INT:
+				return "v.getInt(" + which + ")";
+
+			case LONG:
+				return "v.getLong(" + which + ")";
+
+			case DOUBLE:
+				return "v.getDouble(" + which + ")";
+
+			case BOOLEAN:
+				return "v.getBoolean(" + which + ")";
+
+			case SHORT:
+				return "(short) v.getInt(" + which + ")";
+
+			case BYTE:
+				return "(byte) v.getInt(" + which + ")";
+
+			case FLOAT:
+				return "(float) v.getDouble(" + which + ")";
+
+			case ARRAY:
+				switch(((ArrayType) type).getComponentType().getKind())
+				{
+					case INT:
+						return "v.getIntArray(" + which + ")";
+
+					case LONG:
+						return "v.getLongArray(" + which + ")";
+
+					case DOUBLE:
+						return "v.getDoubleArray(" + which + ")";
+
+					case BYTE:
+						return "v.getBytes(" + which + ")";
+
+					default:
+						break;
+				}
+				break;
+
+			case DECLARED:
+				TypeElement e = (TypeElement) ((DeclaredType) type).asElement();
+				String name = e.getQualifiedName().toString();
+
+				switch(name)
+				{
+					case "java.lang.String":
+						return "v.getString(" + which + ")";
+
+					case "java.lang.Integer":
+						return "v.isNull(" + which + ") ? null : v.getInt(" + which + ")";
+
+					case "java.lang.Long":
+						return "v.isNull(" + which + ") ? null : v.getLong(" + which + ")";
+
+					case "java.lang.Double":
+						return "v.isNull(" + which + ") ? null : v.getDouble(" + which + ")";
+
+					case "java.lang.Boolean":
+						return "v.isNull(" + which + ") ? null : v.getBoolean(" + which + ")";
+
+					case "java.math.BigDecimal":
+						return "v.getBigDecimal(" + which + ")";
+
+					case "java.math.BigInteger":
+						return "v.getBigInteger(" + which + ")";
+
+					case "java.time.LocalDate":
+						return "v.getDate(" + which + ")";
+
+					case "java.time.LocalDateTime":
+						return "v.getLocalDateTime(" + which + ")";
+
+					case "java.time.OffsetDateTime":
+						return "v.getOffsetDateTime(" + which + ")";
+
+					case "java.time.Instant":
+						return "v.getInstant(" + which + ")";
+
+					case "java.util.Date":
+						return "v.getTimestamp(" + which + ")";
+
+					case "org.ketsu.jdbc.UDTValue":
+						return "v.getValue(" + which + ")";
+
+					case "java.util.List":
+						return readList(type, which);
+
+					default:
+						break;
+				}
+
+				if(e.getKind() == ElementKind.ENUM)
+				{
+					return "v.isNull(" + which + ") ? null : " + name + ".valueOf(v.getString(" + which + "))";
+				}
+
+				if(isComposite(e))
+				{
+					return qualifiedCodecName(e) + ".decode(v.getValue(" + which + "))";
+				}
+				break;
+
+			default:
+				break;
+		}
+
+		throw new IllegalArgumentException("Unsupported type "+type+" at position "+which);
+	}
+
+	protected String readList(TypeMirror type, int which)
+	{
+		List<? extends TypeMirror> args = ((DeclaredType) type).getTypeArguments();
+
+		if(args.size() == 1 && args.get(0).getKind() == TypeKind.DECLARED)
+		{
+			TypeElement e = (TypeElement) ((DeclaredType) args.get(0)).asElement();
+
+			switch(e.getQualifiedName().toString())
+			{
+				case "java.lang.String":
+					return "v.getStringCollection(" + which + ")";
+
+				case "java.lang.Integer":
+				case "java.lang.Long":
+				case "java.lang.Double":
+				case "java.lang.Boolean":
+					boxedLists.add(e.getSimpleName().toString());
+					return "read" + e.getSimpleName() + "s(v.getValue(" + which + "))";
+
+				case "java.time.LocalDate":
+					return "v.getDateCollection(" + which + ")";
+
+				case "java.time.LocalTime":
+					return "v.getTimeCollection(" + which + ")";
+
+				case "java.time.Instant":
+					return "v.getInstantCollection(" + which + ")";
+
+				case "java.util.Date":
+					return "v.getTimestampCollection(" + which + ")";
+
+				default:
+					break;
+			}
+
+			if(isComposite(e))
+			{
+				return qualifiedCodecName(e) + ".decodeAll(v.getValue(" + which + "))";
+			}
+		}
+
+		throw new IllegalArgumentException("Unsupported type "+type+" at position "+which);
+	}
+
+	/**
+	 * @return the statement setting the field of the CustomType t
+	 */
+	protected String write(TypeMirror type, int which, String value)
+	{
+		switch(type.getKind())
+		{
+			case INT:
+			case SHORT:
+			case BYTE:
+				return "t.setInt(" + which + ", " + value + ")";
+
+			case LONG:
+				return "t.setLong(" + which + ", " + value + ")";
+
+			case DOUBLE:
+				return "t.setDouble(" + which + ", " + value + ")";
+
+			case FLOAT:
+				return "t.setFloat(" + which + ", " + value + ")";
+
+			case BOOLEAN:
+				return "t.setBoolean(" + which + ", " + value + ")";
+
+			case ARRAY:
+				if(((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE)
+				{
+					return "t.setBytes(" + which + ", " + value + ")";
+				}
+
+				// checked by read()
+				read(type, which);
+
+				return "t.set(" + which + ", " + value + ")";
+
+			case DECLARED:
+				TypeElement e = (TypeElement) ((DeclaredType) type).asElement();
+
+				if(e.getKind() == ElementKind.ENUM)
+				{
+					return "t.set(" + which + ", (Object) (" + value + " == null ? null : " + value + ".name()))";
+				}
+
+				if(isComposite(e))
+				{
+					return "t.set(" + which + ", " + qualifiedCodecName(e) + ".encode(" + value + "))";
+				}
+
+				if(e.getQualifiedName().contentEquals("java.util.List"))
+				{
+					List<? extends TypeMirror> args = ((DeclaredType) type).getTypeArguments();
+
+					if(args.size() == 1 && args.get(0).getKind() == TypeKind.DECLARED && isComposite(((DeclaredType) args.get(0)).asElement()))
+					{
+						return "t.set(" + which + ", " + qualifiedCodecName(((DeclaredType) args.get(0)).asElement()) + ".builder(" + value + "))";
+					}
+				}
+
+				if(e.getQualifiedName().contentEquals("org.ketsu.jdbc.UDTValue"))
+				{
+					break;
+				}
+
+				// checked by read(), the overloads of set() pick the fast paths
+				read(type, which);
+
+				return "t.set(" + which + ", " + value + ")";
+
+			default:
+				break;
+		}
+
+		throw new IllegalArgumentException("Unsupported type "+type+" at position "+which);
+	}
+
+	protected static boolean isComposite(Element e)
+	{
+		return e.getKind() == ElementKind.RECORD && e.getAnnotation(PgComposite.class) != null;
+	}
+
+	protected static String packageOf(Element e)
+	{
+		while(!(e instanceof PackageElement))
+		{
+			e = e.getEnclosingElement();
+		}
+
+		return ((PackageElement) e).getQualifiedName().toString();
+	}
+
+	/**
+	 * @return Codec suffixed name, nested records are prefixed with the names of the enclosing classes
+	 */
+	protected static String codecName(Element e)
+	{
+		List<String> names = new ArrayList<String>();
+
+		for(Element c = e; !(c instanceof PackageElement); c = c.getEnclosingElement())
+		{
+			names.add(0, c.getSimpleName().toString());
+		}
+
+		return String.join("_", names) + "Codec";
+	}
+
+	protected static String qualifiedCodecName(Element e)
+	{
+		String pkg = packageOf(e);
+
+		return pkg.isEmpty() ? codecName(e) : pkg + "." + codecName(e);
+	}
+
+	protected void error(Element e, String message)
+	{
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, e);
+	}
+}
@@ -0,0 +1,1037 @@
+package org.ketsu.jdbc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Parses values in the binary format of record_send and array_send, e.g from
+ * ResultSet.getBytes() with binary transfer.
+ *
+ * Built-in types are decoded by their OID, composite types, domains, enums
+ * etc. are recognised by their layout: types and arrays when it is valid for
+ * them, simple values otherwise.
+ *
+ * Values are parsed lazily and are not thread-safe.
+ */
+public class BinaryUDTValue extends UDTValue
+{
+	// 2000-01-01 in the Unix epoch
+	protected static final long PG_EPOCH_SECONDS = 946684800L;
+	protected static final long PG_EPOCH_DAYS = 10957L;
+
+	protected static final int MAX_DIMENSIONS = 6;
+
+	protected final byte[] bytes;
+	protected final int start;
+	protected final int end;
+	protected final int oid;
+
+	/*
+	 * oid, start and end of every field of a type, start and end of every
+	 * element of an array, start is -1 for NULLs
+	 */
+	protected int[] index;
+	protected int size;
+	protected UDTValue[] children;
+
+	// arrays, a multidimensional array is returned as arrays of subarrays
+	protected int elementOid;
+	protected int[] dims;
+	protected int dimension;
+	protected int first;
+
+	public BinaryUDTValue(byte[] bytes)
+	{
+		this(bytes, 0, bytes.length, 0);
+	}
+
+	/**
+	 * @param oid type of the value, 0 if unknown
+	 */
+	public BinaryUDTValue(byte[] bytes, int start, int end, int oid)
+	{
+		this.bytes = bytes;
+		this.start = start;
+		this.end = end;
+		this.oid = oid;
+	}
+
+	protected BinaryUDTValue(BinaryUDTValue array, int dimension, int first)
+	{
+		this(array.bytes, array.start, array.end, array.oid);
+
+		this.index = array.index;
+		this.elementOid = array.elementOid;
+		this.dims = array.dims;
+		this.dimension = dimension;
+		this.first = first;
+
+		size = dims[dimension];
+		type = Type.ARRAY;
+		parsed = true;
+	}
+
+	@Override
+	protected void parse()
+	{
+		if(parsed)
+		{
+			throw new IllegalStateException("Already parsed!");
+		}
+
+		parsed = true;
+
+		if(oid == PgOid.RECORD)
+		{
+			parseType();
+		}
+		else if(PgOid.elementOf(oid) != 0)
+		{
+			parseArray();
+		}
+		else if(PgOid.isScalar(oid))
+		{
+			type = Type.NORMAL;
+		}
+		else if(isArrayLayout())
+		{
+			parseArray();
+		}
+		else if(isTypeLayout())
+		{
+			parseType();
+		}
+		else
+		{
+			type = Type.NORMAL;
+		}
+	}
+
+	protected boolean isArrayLayout()
+	{
+		if(end - start < 12)
+		{
+			return false;
+		}
+
+		int ndim = int32(start);
+		int flags = int32(start + 4);
+
+		if(ndim < 0 || ndim > MAX_DIMENSIONS || (flags & ~1) != 0)
+		{
+			return false;
+		}
+
+		int p = start + 12;
+
+		if(p + ndim * 8 > end)
+		{
+			return false;
+		}
+
+		long count = ndim == 0 ? 0 : 1;
+
+		for(int i = 0; i < ndim; i++, p += 8)
+		{
+			int dim = int32(p);
+
+			if(dim < 0)
+			{
+				return false;
+			}
+
+			count *= dim;
+
+			if(count > end - start)
+			{
+				return false;
+			}
+		}
+
+		for(long i = 0; i < count; i++)
+		{
+			if(p + 4 > end)
+			{
+				return false;
+			}
+
+			int len = int32(p);
+
+			p += 4 + Math.max(len, 0);
+
+			if(len < -1 || p > end)
+			{
+				return false;
+			}
+		}
+
+		return p == end;
+	}
+
+	protected boolean isTypeLayout()
+	{
+		if(end - start < 4)
+		{
+			return false;
+		}
+
+		int n = int32(start);
+		int p = start + 4;
+
+		for(int i = 0; i < n; i++)
+		{
+			if(p + 8 > end)
+			{
+				return false;
+			}
+
+			int len = int32(p + 4);
+
+			p += 8 + Math.max(len, 0);
+
+			if(len < -1 || p > end)
+			{
+				return false;
+			}
+		}
+
+		return n >= 0 && p == end;
+	}
+
+	protected void parseType()
+	{
+		type = Type.TYPE;
+
+		size = int32(start);
+		index = new int[size * 3];
+
+		int p = start + 4;
+
+		for(int i = 0; i < size; i++)
+		{
+			int len = int32(p + 4);
+
+			index[i * 3] = int32(p);
+			index[i * 3 + 1] = len < 0 ? -1 : p + 8;
+			index[i * 3 + 2] = p + 8 + Math.max(len, 0);
+
+			p += 8 + Math.max(len, 0);
+		}
+	}
+
+	protected void parseArray()
+	{
+		type = Type.ARRAY;
+
+		int ndim = int32(start);
+
+		elementOid = int32(start + 8);
+
+		if(ndim == 0)
+		{
+			return;
+		}
+
+		dims = new int[ndim];
+
+		int p = start + 12;
+		int count = 1;
+
+		for(int i = 0; i < ndim; i++, p += 8)
+		{
+			dims[i] = int32(p);
+			count *= dims[i];
+		}
+
+		index = new int[count * 2];
+
+		for(int i = 0; i < count; i++)
+		{
+			int len = int32(p);
+
+			index[i * 2] = len < 0 ? -1 : p + 4;
+			index[i * 2 + 1] = p + 4 + Math.max(len, 0);
+
+			p += 4 + Math.max(len, 0);
+		}
+
+		size = dims[0];
+	}
+
+	@Override
+	public int getSize()
+	{
+		checkParsed();
+
+		return size;
+	}
+
+	@Override
+	public UDTValue getValue(int which)
+	{
+		if(getSize() < which)
+		{
+			return null;
+		}
+
+		if(children == null)
+		{
+			children = new UDTValue[size];
+		}
+
+		UDTValue ret = children[which - 1];
+
+		if(ret == null)
+		{
+			ret = children[which - 1] = createChild(which - 1);
+		}
+
+		return ret;
+	}
+
+	@Override
+	public List<UDTValue> getValues()
+	{
+		checkParsed();
+
+		if(values == null && type != Type.NORMAL)
+		{
+			values = new ArrayList<UDTValue>(size);
+
+			for(int i = 1; i <= size; i++)
+			{
+				values.add(getValue(i));
+			}
+		}
+
+		return values;
+	}
+
+	@Override
+	protected UDTValue valueAt(int n)
+	{
+		// not cached, so parallel streams do not race on the children
+		return createChild(n);
+	}
+
+	protected UDTValue createChild(int n)
+	{
+		if(type == Type.TYPE)
+		{
+			int s = index[n * 3 + 1];
+
+			return s < 0 ? UDTValue.NULL : new BinaryUDTValue(bytes, s, index[n * 3 + 2], index[n * 3]);
+		}
+
+		if(dimension < dims.length - 1)
+		{
+			int stride = 1;
+
+			for(int i = dimension + 1; i < dims.length; i++)
+			{
+				stride *= dims[i];
+			}
+
+			return new BinaryUDTValue(this, dimension + 1, first + n * stride);
+		}
+
+		int e = first + n;
+		int s = index[e * 2];
+
+		return s < 0 ? UDTValue.NULL : new BinaryUDTValue(bytes, s, index[e * 2 + 1], elementOid);
+	}
+
+	/**
+	 * @return the OID of a 0-based field or element that can be read in place, 0 for subarrays
+	 */
+	protected int oidAt(int n)
+	{
+		checkParsed();
+
+		if(type == Type.TYPE)
+		{
+			return index[n * 3];
+		}
+
+		return type == Type.ARRAY && dimension == dims.length - 1 ? elementOid : 0;
+	}
+
+	/**
+	 * @return the start of a 0-based field or element, -1 for NULLs
+	 */
+	protected int startAt(int n)
+	{
+		return type == Type.TYPE ? index[n * 3 + 1] : index[(first + n) * 2];
+	}
+
+	@Override
+	protected int intAt(int n)
+	{
+		switch(oidAt(n))
+		{
+			case PgOid.INT2:
+				return startAt(n) < 0 ? 0 : int16(startAt(n));
+
+			case PgOid.INT4:
+				return startAt(n) < 0 ? 0 : int32(startAt(n));
+
+			default:
+				return super.intAt(n);
+		}
+	}
+
+	@Override
+	protected long longAt(int n)
+	{
+		switch(oidAt(n))
+		{
+			case PgOid.INT2:
+				return startAt(n) < 0 ? 0 : int16(startAt(n));
+
+			case PgOid.INT4:
+				return startAt(n) < 0 ? 0 : int32(startAt(n));
+
+			case PgOid.INT8:
+				return startAt(n) < 0 ? 0 : int64(startAt(n));
+
+			default:
+				return super.longAt(n);
+		}
+	}
+
+	@Override
+	protected double doubleAt(int n)
+	{
+		switch(oidAt(n))
+		{
+			case PgOid.FLOAT4:
+				return startAt(n) < 0 ? 0 : Float.intBitsToFloat(int32(startAt(n)));
+
+			case PgOid.FLOAT8:
+				return startAt(n) < 0 ? 0 : Double.longBitsToDouble(int64(startAt(n)));
+
+			default:
+				return super.doubleAt(n);
+		}
+	}
+
+	@Override
+	protected boolean booleanAt(int n)
+	{
+		if(oidAt(n) == PgOid.BOOL)
+		{
+			return startAt(n) >= 0 && bytes[startAt(n)] != 0;
+		}
+
+		return super.booleanAt(n);
+	}
+
+	@Override
+	protected boolean isNullAt(int n)
+	{
+		return oidAt(n) != 0 ? startAt(n) < 0 : super.isNullAt(n);
+	}
+
+	public int getOid()
+	{
+		return oid;
+	}
+
+	@Override
+	public boolean isNull()
+	{
+		return false;
+	}
+
+	@Override
+	public int toInt()
+	{
+		switch(oid)
+		{
+			case PgOid.INT2:
+				return int16(start);
+
+			case PgOid.INT4:
+				return int32(start);
+
+			case PgOid.INT8:
+			case PgOid.OID:
+				long v = toLong();
+
+				if(v < Integer.MIN_VALUE || v > Integer.MAX_VALUE)
+				{
+					throw new NumberFormatException("Value out of range: "+v);
+				}
+
+				return (int) v;
+
+			default:
+				return super.toInt();
+		}
+	}
+
+	@Override
+	public long toLong()
+	{
+		switch(oid)
+		{
+			case PgOid.INT2:
+				return int16(start);
+
+			case PgOid.INT4:
+				return int32(start);
+
+			case PgOid.INT8:
+				return int64(start);
+
+			case PgOid.OID:
+				return int32(start) & 0xffffffffL;
+
+			default:
+				return super.toLong();
+		}
+	}
+
+	@Override
+	public double toDouble()
+	{
+		switch(oid)
+		{
+			case PgOid.FLOAT4:
+				return Float.intBitsToFloat(int32(start));
+
+			case PgOid.FLOAT8:
+				return Double.longBitsToDouble(int64(start));
+
+			case PgOid.INT2:
+			case PgOid.INT4:
+			case PgOid.INT8:
+			case PgOid.OID:
+				return toLong();
+
+			default:
+				return super.toDouble();
+		}
+	}
+
+	@Override
+	public boolean toBoolean()
+	{
+		if(oid == PgOid.BOOL)
+		{
+			return bytes[start] != 0;
+		}
+
+		return super.toBoolean();
+	}
+
+	@Override
+	public byte[] toBytes()
+	{
+		if(oid == PgOid.BYTEA)
+		{
+			return Arrays.copyOfRange(bytes, start, end);
+		}
+
+		return super.toBytes();
+	}
+
+	@Override
+	public LocalDate toDate()
+	{
+		switch(oid)
+		{
+			case PgOid.DATE:
+				int days = int32(start);
+
+				if(days == Integer.MAX_VALUE || days == Integer.MIN_VALUE)
+				{
+					break;
+				}
+
+				return LocalDate.ofEpochDay(days + PG_EPOCH_DAYS);
+
+			case PgOid.TIMESTAMP:
+			case PgOid.TIMESTAMPTZ:
+				long micros = int64(start);
+
+				if(micros == Long.MAX_VALUE || micros == Long.MIN_VALUE)
+				{
+					break;
+				}
+
+				return LocalDate.ofEpochDay(Math.floorDiv(micros, 86400000000L) + PG_EPOCH_DAYS);
+		}
+
+		return super.toDate();
+	}
+
+	@Override
+	public LocalTime toTime()
+	{
+		if(oid == PgOid.TIME)
+		{
+			return LocalTime.ofNanoOfDay(int64(start) * 1000);
+		}
+
+		return super.toTime();
+	}
+
+	@Override
+	public long toEpochMicros()
+	{
+		if(isTimestamp())
+		{
+			long micros = int64(start);
+
+			if(micros == Long.MAX_VALUE || micros == Long.MIN_VALUE)
+			{
+				return micros;
+			}
+
+			return micros + PG_EPOCH_SECONDS * PgDateTime.MICROS_PER_SECOND;
+		}
+
+		if(oid == PgOid.DATE)
+		{
+			return (int32(start) + PG_EPOCH_DAYS) * PgDateTime.MICROS_PER_DAY;
+		}
+
+		return super.toEpochMicros();
+	}
+
+	@Override
+	public LocalDateTime toLocalDateTime()
+	{
+		if(isTimestamp() || oid == PgOid.DATE)
+		{
+			return PgDateTime.toLocalDateTime(toEpochMicros());
+		}
+
+		return super.toLocalDateTime();
+	}
+
+	@Override
+	public OffsetDateTime toOffsetDateTime()
+	{
+		if(isTimestamp() || oid == PgOid.DATE)
+		{
+			return OffsetDateTime.of(toLocalDateTime(), ZoneOffset.UTC);
+		}
+
+		return super.toOffsetDateTime();
+	}
+
+	@Override
+	public BigDecimal toBigDecimal()
+	{
+		switch(oid)
+		{
+			case PgOid.NUMERIC:
+				return decodeNumeric();
+
+			case PgOid.INT2:
+			case PgOid.INT4:
+			case PgOid.INT8:
+			case PgOid.OID:
+				return BigDecimal.valueOf(toLong());
+
+			default:
+				return super.toBigDecimal();
+		}
+	}
+
+	protected boolean isTimestamp()
+	{
+		if(oid != PgOid.TIMESTAMP && oid != PgOid.TIMESTAMPTZ)
+		{
+			return false;
+		}
+
+		long micros = int64(start);
+
+		// infinity
+		return micros != Long.MAX_VALUE && micros != Long.MIN_VALUE;
+	}
+
+	protected BigDecimal decodeNumeric()
+	{
+		int ndigits = int16(start);
+		int weight = int16(start + 2);
+		int sign = int16(start + 4) & 0xffff;
+		int dscale = int16(start + 6);
+
+		if(sign != 0 && sign != 0x4000)
+		{
+			throw new NumberFormatException("Not a number: "+numericSpecial(sign));
+		}
+
+		if(ndigits == 0)
+		{
+			return BigDecimal.ZERO.setScale(dscale);
+		}
+
+		// digits are in base 10000
+		char[] digits = new char[ndigits * 4];
+
+		for(int i = 0; i < ndigits; i++)
+		{
+			int d = int16(start + 8 + i * 2);
+
+			digits[i * 4] = (char) ('0' + d / 1000);
+			digits[i * 4 + 1] = (char) ('0' + d / 100 % 10);
+			digits[i * 4 + 2] = (char) ('0' + d / 10 % 10);
+			digits[i * 4 + 3] = (char) ('0' + d % 10);
+		}
+
+		BigDecimal ret = new BigDecimal(new BigInteger(new String(digits)), 4 * (ndigits - 1 - weight)).setScale(dscale, RoundingMode.DOWN);
+
+		return sign == 0x4000 ? ret.negate() : ret;
+	}
+
+	/**
+	 * Formats the value like float4out/float8out do by default, i.e the
+	 * shortest digits that read back as the same value, e.g 1, 0.1 or 1e+20.
+	 */
+	protected static String formatFloat(double v, boolean single)
+	{
+		if(Double.isNaN(v))
+		{
+			return "NaN";
+		}
+
+		if(Double.isInfinite(v))
+		{
+			return v > 0 ? "Infinity" : "-Infinity";
+		}
+
+		if(v == 0)
+		{
+			return Double.doubleToRawLongBits(v) < 0 ? "-0" : "0";
+		}
+
+		BigDecimal d = new BigDecimal(single ? Float.toString((float) v) : Double.toString(v)).stripTrailingZeros();
+
+		// toString() may give a digit more than needed
+		for(int p = d.precision() - 1; p > 0; p--)
+		{
+			BigDecimal r = d.round(new MathContext(p, RoundingMode.HALF_EVEN));
+			double back = single ? Float.parseFloat(r.toString()) : Double.parseDouble(r.toString());
+
+			if(back != v)
+			{
+				break;
+			}
+
+			d = r.stripTrailingZeros();
+		}
+
+		int exponent = d.precision() - d.scale() - 1;
+
+		if(exponent >= -4 && exponent < (single ? 6 : 15))
+		{
+			return d.toPlainString();
+		}
+
+		String digits = d.unscaledValue().abs().toString();
+		StringBuilder ret = new StringBuilder(digits.length() + 8);
+
+		if(v < 0)
+		{
+			ret.append('-');
+		}
+
+		ret.append(digits.charAt(0));
+
+		if(digits.length() > 1)
+		{
+			ret.append('.');
+			ret.append(digits, 1, digits.length());
+		}
+
+		ret.append(exponent < 0 ? "e-" : "e+");
+
+		if(Math.abs(exponent) < 10)
+		{
+			ret.append('0');
+		}
+
+		ret.append(Math.abs(exponent));
+
+		return ret.toString();
+	}
+
+	protected static String numericSpecial(int sign)
+	{
+		switch(sign)
+		{
+			case 0xD000:
+				return "Infinity";
+
+			case 0xF000:
+				return "-Infinity";
+
+			default:
+				return "NaN";
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		checkParsed();
+
+		if(type != Type.NORMAL)
+		{
+			CustomTypeWriter w = new CustomTypeWriter();
+
+			write(w);
+
+			return w.toString();
+		}
+
+		switch(oid)
+		{
+			case PgOid.BOOL:
+				return bytes[start] != 0 ? "t" : "f";
+
+			case PgOid.INT2:
+			case PgOid.INT4:
+			case PgOid.INT8:
+			case PgOid.OID:
+				return Long.toString(toLong());
+
+			case PgOid.FLOAT4:
+				return formatFloat(toDouble(), true);
+
+			case PgOid.FLOAT8:
+				return formatFloat(toDouble(), false);
+
+			case PgOid.BYTEA:
+				StringBuilder hex = new StringBuilder(2 + (end - start) * 2);
+
+				hex.append("\\x");
+
+				PgBytea.appendHex(hex, bytes, start, end);
+
+				return hex.toString();
+
+			case PgOid.DATE:
+				int days = int32(start);
+
+				if(days == Integer.MAX_VALUE || days == Integer.MIN_VALUE)
+				{
+					return days > 0 ? "infinity" : "-infinity";
+				}
+
+				return toDate().toString();
+
+			case PgOid.TIME:
+				StringBuilder time = new StringBuilder(15);
+
+				appendTime(time, int64(start));
+
+				return time.toString();
+
+			case PgOid.TIMESTAMP:
+			case PgOid.TIMESTAMPTZ:
+				long micros = int64(start);
+
+				if(micros == Long.MAX_VALUE || micros == Long.MIN_VALUE)
+				{
+					return micros > 0 ? "infinity" : "-infinity";
+				}
+
+				StringBuilder ts = new StringBuilder(32);
+
+				ts.append(toDate());
+				ts.append(' ');
+
+				appendTime(ts, Math.floorMod(micros, 86400000000L));
+
+				if(oid == PgOid.TIMESTAMPTZ)
+				{
+					ts.append("+00");
+				}
+
+				return ts.toString();
+
+			case PgOid.NUMERIC:
+				int sign = int16(start + 4) & 0xffff;
+
+				if(sign != 0 && sign != 0x4000)
+				{
+					return numericSpecial(sign);
+				}
+
+				return decodeNumeric().toPlainString();
+
+			case PgOid.UUID:
+				return new UUID(int64(start), int64(start + 8)).toString();
+
+			case PgOid.JSONB:
+				// version byte
+				return new String(bytes, start + 1, end - start - 1, StandardCharsets.UTF_8);
+
+			case PgOid.INTERVAL:
+				StringBuilder interval = new StringBuilder(32);
+
+				PgDateTime.appendInterval(interval, int64(start), int32(start + 8), int32(start + 12));
+
+				return interval.toString();
+
+			case PgOid.TIMETZ:
+				StringBuilder timetz = new StringBuilder(24);
+
+				PgDateTime.appendTimeTz(timetz, int64(start), int32(start + 8));
+
+				return timetz.toString();
+
+			default:
+				return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Writes the value as a text literal.
+	 */
+	public void write(CustomTypeWriter w)
+	{
+		checkParsed();
+
+		if(type == Type.NORMAL)
+		{
+			switch(oid)
+			{
+				case PgOid.BOOL:
+				case PgOid.INT2:
+				case PgOid.INT4:
+				case PgOid.INT8:
+				case PgOid.OID:
+				case PgOid.FLOAT4:
+				case PgOid.FLOAT8:
+				case PgOid.NUMERIC:
+					w.writeRaw(toString());
+					break;
+
+				default:
+					w.writeString(toString());
+			}
+
+			return;
+		}
+
+		if(type == Type.TYPE)
+		{
+			w.beginType();
+		}
+		else
+		{
+			w.beginArray();
+		}
+
+		for(int i = 1, max = getSize(); i <= max; i++)
+		{
+			UDTValue v = getValue(i);
+
+			if(v.isNull())
+			{
+				w.writeNull();
+			}
+			else
+			{
+				((BinaryUDTValue) v).write(w);
+			}
+		}
+
+		if(type == Type.TYPE)
+		{
+			w.endType();
+		}
+		else
+		{
+			w.endArray();
+		}
+	}
+
+	protected static void appendTime(StringBuilder b, long micros)
+	{
+		long seconds = micros / 1000000;
+		int fraction = (int) (micros % 1000000);
+
+		append2(b, (int) (seconds / 3600));
+		b.append(':');
+		append2(b, (int) (seconds / 60 % 60));
+		b.append(':');
+		append2(b, (int) (seconds % 60));
+
+		if(fraction != 0)
+		{
+			b.append('.');
+
+			// without trailing zeros
+			for(int div = 100000; fraction != 0; div /= 10)
+			{
+				b.append((char) ('0' + fraction / div));
+
+				fraction %= div;
+			}
+		}
+	}
+
+	protected static void append2(StringBuilder b, int v)
+	{
+		b.append((char) ('0' + v / 10));
+		b.append((char) ('0' + v % 10));
+	}
+
+	protected int int16(int pos)
+	{
+		return (short) (((bytes[pos] & 0xff) << 8) | (bytes[pos + 1] & 0xff));
+	}
+
+	protected int int32(int pos)
+	{
+		return ((bytes[pos] & 0xff) << 24) | ((bytes[pos + 1] & 0xff) << 16) | ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+	}
+
+	protected long int64(int pos)
+	{
+		return ((long) int32(pos) << 32) | (int32(pos + 4) & 0xffffffffL);
+	}
+}
@@ -0,0 +1,315 @@
+package org.ketsu.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Describes a composite type for the binary format, which needs the OIDs of
+ * the type and of all its fields:
+ *
+ * <pre>
+ * CompositeTypeDescriptor users = new CompositeTypeDescriptor("users_type", 16401, 16400)
+ *   .add("id", PgOid.INT4)
+ *   .add("name", PgOid.TEXT)
+ *   .addArray("addresses", addressType);
+ * </pre>
+ *
+ * Named fields can be read by name with {@link UDTValue#as(CompositeTypeDescriptor)}.
+ * Descriptors can also be loaded from the catalog with a
+ * {@link CompositeTypeRegistry}. A descriptor must not be changed after it
+ * has been shared between threads.
+ */
+public class CompositeTypeDescriptor
+{
+	protected final String name;
+	protected final int oid;
+	protected final int arrayOid;
+
+	/**
+	 * Fields of the type in order, the parameter is pg_type.oid of the type.
+	 */
+	public static final String ATTRIBUTES_QUERY = "SELECT a.attname, a.atttypid, t.typname FROM pg_attribute a JOIN pg_type t ON t.oid = a.atttypid"
+		+ " WHERE a.attrelid = (SELECT typrelid FROM pg_type WHERE oid = ?) AND a.attnum > 0 AND NOT a.attisdropped ORDER BY a.attnum";
+
+	protected int[] fieldOids = new int[8];
+	// descriptors of composite fields and of the elements of composite array fields
+	protected CompositeTypeDescriptor[] fieldTypes = new CompositeTypeDescriptor[8];
+	protected String[] fieldNames = new String[8];
+	protected String[] fieldTypeNames = new String[8];
+	protected int size;
+
+	// open addressing table of 1-based positions by field name, 0 is a free slot
+	protected int[] positions = new int[16];
+
+	/**
+	 * @param name name without schema, as for CustomTypeArray
+	 * @param oid pg_type.oid of the type
+	 * @param arrayOid pg_type.oid of the array type, i.e pg_type.typarray
+	 */
+	public CompositeTypeDescriptor(String name, int oid, int arrayOid)
+	{
+		this.name = name;
+		this.oid = oid;
+		this.arrayOid = arrayOid;
+	}
+
+	public CompositeTypeDescriptor add(int fieldOid)
+	{
+		return add(null, fieldOid);
+	}
+
+	public CompositeTypeDescriptor add(CompositeTypeDescriptor type)
+	{
+		return add(null, type);
+	}
+
+	public CompositeTypeDescriptor addArray(CompositeTypeDescriptor type)
+	{
+		return addArray(null, type);
+	}
+
+	public CompositeTypeDescriptor add(String fieldName, int fieldOid)
+	{
+		return add(fieldName, PgOid.nameOf(fieldOid), fieldOid, null);
+	}
+
+	/**
+	 * A field of a type that is not built in, e.g an enum or a domain.
+	 */
+	public CompositeTypeDescriptor add(String fieldName, String typeName, int fieldOid)
+	{
+		return add(fieldName, typeName, fieldOid, null);
+	}
+
+	public CompositeTypeDescriptor add(String fieldName, CompositeTypeDescriptor type)
+	{
+		return add(fieldName, type.name, type.oid, type);
+	}
+
+	public CompositeTypeDescriptor addArray(String fieldName, CompositeTypeDescriptor type)
+	{
+		return add(fieldName, "_" + type.name, type.arrayOid, type);
+	}
+
+	/**
+	 * Adds the fields from the rows of {@link #ATTRIBUTES_QUERY}, composite
+	 * fields and arrays of them are looked up from the registry by the type
+	 * OID, so types with the same name in different schemas are told apart.
+	 */
+	public CompositeTypeDescriptor addAll(ResultSet attributes, CompositeTypeRegistry registry) throws SQLException
+	{
+		while(attributes.next())
+		{
+			String fieldName = attributes.getString("attname");
+			int fieldOid = attributes.getInt("atttypid");
+			String typeName = attributes.getString("typname");
+
+			CompositeTypeDescriptor type = registry == null ? null : registry.get(fieldOid);
+
+			if(type != null)
+			{
+				add(fieldName, type);
+			}
+			else if(registry != null && (type = registry.getByArrayOid(fieldOid)) != null)
+			{
+				addArray(fieldName, type);
+			}
+			else
+			{
+				add(fieldName, typeName, fieldOid);
+			}
+		}
+
+		return this;
+	}
+
+	protected CompositeTypeDescriptor add(String fieldName, String typeName, int fieldOid, CompositeTypeDescriptor type)
+	{
+		if(fieldName != null && getPosition(fieldName) != 0)
+		{
+			throw new IllegalArgumentException("Duplicate field "+fieldName+" in "+name);
+		}
+
+		if(size == fieldOids.length)
+		{
+			fieldOids = Arrays.copyOf(fieldOids, size * 2);
+			fieldTypes = Arrays.copyOf(fieldTypes, size * 2);
+			fieldNames = Arrays.copyOf(fieldNames, size * 2);
+			fieldTypeNames = Arrays.copyOf(fieldTypeNames, size * 2);
+		}
+
+		fieldOids[size] = fieldOid;
+		fieldTypes[size] = type;
+		fieldNames[size] = fieldName;
+		fieldTypeNames[size] = typeName;
+
+		size++;
+
+		if(fieldName != null)
+		{
+			if(size * 2 > positions.length)
+			{
+				positions = new int[positions.length * 2];
+
+				for(int i = 0; i < size; i++)
+				{
+					if(fieldNames[i] != null)
+					{
+						put(fieldNames[i], i + 1);
+					}
+				}
+			}
+			else
+			{
+				put(fieldName, size);
+			}
+		}
+
+		return this;
+	}
+
+	protected void put(String fieldName, int position)
+	{
+		int mask = positions.length - 1;
+		int i = fieldName.hashCode() & mask;
+
+		while(positions[i] != 0)
+		{
+			i = (i + 1) & mask;
+		}
+
+		positions[i] = position;
+	}
+
+	/**
+	 * @return the 1-based position of the field like in CustomType and UDTValue, 0 if there is no such field
+	 */
+	public int getPosition(String fieldName)
+	{
+		int mask = positions.length - 1;
+
+		for(int i = fieldName.hashCode() & mask; ; i = (i + 1) & mask)
+		{
+			int p = positions[i];
+
+			if(p == 0 || fieldNames[p - 1].equals(fieldName))
+			{
+				return p;
+			}
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException if there is no such field
+	 */
+	public int position(String fieldName)
+	{
+		int ret = getPosition(fieldName);
+
+		if(ret == 0)
+		{
+			throw new IllegalArgumentException("No field "+fieldName+" in "+name);
+		}
+
+		return ret;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getOid()
+	{
+		return oid;
+	}
+
+	public int getArrayOid()
+	{
+		return arrayOid;
+	}
+
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @param which 1-based position like in CustomType and UDTValue
+	 */
+	public int getFieldOid(int which)
+	{
+		return fieldOids[which - 1];
+	}
+
+	/**
+	 * @return the descriptor of a composite field or of the elements of a composite array field, null for other fields
+	 */
+	public CompositeTypeDescriptor getFieldType(int which)
+	{
+		return fieldTypes[which - 1];
+	}
+
+	/**
+	 * @return pg_attribute.attname of the field, null for unnamed fields
+	 */
+	public String getFieldName(int which)
+	{
+		return fieldNames[which - 1];
+	}
+
+	/**
+	 * @return pg_type.typname of the field, null if not known
+	 */
+	public String getFieldTypeName(int which)
+	{
+		return fieldTypeNames[which - 1];
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder ret = new StringBuilder(name).append('(');
+
+		for(int i = 0; i < size; i++)
+		{
+			if(i > 0)
+			{
+				ret.append(", ");
+			}
+
+			if(fieldNames[i] != null)
+			{
+				ret.append(fieldNames[i]).append(' ');
+			}
+
+			ret.append(fieldTypeNames[i]);
+		}
+
+		return ret.append(')').toString();
+	}
+}
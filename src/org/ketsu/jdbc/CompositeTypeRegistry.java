@@ -0,0 +1,205 @@
+package org.ketsu.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Composite type descriptors by type name and OID, usually one per
+ * application:
+ *
+ * <pre>
+ * static final CompositeTypeRegistry TYPES = new CompositeTypeRegistry();
+ *
+ * CompositeTypeDescriptor users = TYPES.load(conn, "users_type");
+ * </pre>
+ *
+ * Types are told apart by their OID, a type name without a schema refers to
+ * the type that was registered last with that name. The registry is
+ * thread-safe, registered descriptors must not be changed.
+ */
+public class CompositeTypeRegistry
+{
+	protected static final String TYPE_QUERY = "SELECT oid, typarray, typname FROM pg_type WHERE oid = ?::regtype AND typtype = 'c'";
+	protected static final String TYPE_BY_OID_QUERY = "SELECT oid, typarray, typname FROM pg_type WHERE oid = ? AND typtype = 'c'";
+
+	// composite types used by the fields of a type, directly or as array elements
+	protected static final String FIELD_TYPES_QUERY = "SELECT DISTINCT t.oid FROM pg_attribute a JOIN pg_type f ON f.oid = a.atttypid"
+		+ " JOIN pg_type t ON t.oid = CASE WHEN f.typelem <> 0 AND f.typlen = -1 THEN f.typelem ELSE f.oid END"
+		+ " WHERE a.attrelid = (SELECT typrelid FROM pg_type WHERE oid = ?) AND a.attnum > 0 AND NOT a.attisdropped AND t.typtype = 'c'";
+
+	protected final ConcurrentMap<String, CompositeTypeDescriptor> byName = new ConcurrentHashMap<String, CompositeTypeDescriptor>();
+	protected final ConcurrentMap<Integer, CompositeTypeDescriptor> byOid = new ConcurrentHashMap<Integer, CompositeTypeDescriptor>();
+	protected final ConcurrentMap<Integer, CompositeTypeDescriptor> byArrayOid = new ConcurrentHashMap<Integer, CompositeTypeDescriptor>();
+
+	public CompositeTypeDescriptor register(CompositeTypeDescriptor type)
+	{
+		byName.put(type.getName(), type);
+		byOid.put(type.getOid(), type);
+
+		if(type.getArrayOid() != 0)
+		{
+			byArrayOid.put(type.getArrayOid(), type);
+		}
+
+		return type;
+	}
+
+	/**
+	 * @param name name without schema, as for CustomTypeArray
+	 */
+	public CompositeTypeDescriptor get(String name)
+	{
+		return byName.get(name);
+	}
+
+	public CompositeTypeDescriptor get(int oid)
+	{
+		return byOid.get(oid);
+	}
+
+	/**
+	 * @return the descriptor of the elements of the array type
+	 */
+	public CompositeTypeDescriptor getByArrayOid(int arrayOid)
+	{
+		return byArrayOid.get(arrayOid);
+	}
+
+	/**
+	 * Loads and registers the type from pg_type and pg_attribute, together
+	 * with the composite types of its fields. Types that are already
+	 * registered are not loaded again, but the name is always resolved.
+	 *
+	 * @param name type name as resolved by the search_path, may have a schema
+	 */
+	public CompositeTypeDescriptor load(Connection conn, String name) throws SQLException
+	{
+		CompositeTypeDescriptor ret;
+
+		try(PreparedStatement st = conn.prepareStatement(TYPE_QUERY))
+		{
+			st.setString(1, name);
+
+			ret = load(conn, st, name);
+		}
+
+		if(!ret.getName().equals(name))
+		{
+			byName.put(name, ret);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Loads and registers the type by its OID like {@link #load(Connection, String)}.
+	 */
+	public CompositeTypeDescriptor load(Connection conn, int oid) throws SQLException
+	{
+		CompositeTypeDescriptor ret = get(oid);
+
+		if(ret != null)
+		{
+			return ret;
+		}
+
+		try(PreparedStatement st = conn.prepareStatement(TYPE_BY_OID_QUERY))
+		{
+			st.setInt(1, oid);
+
+			return load(conn, st, Integer.toString(oid));
+		}
+	}
+
+	/**
+	 * @param type query of the oid, typarray and typname of the type
+	 */
+	protected CompositeTypeDescriptor load(Connection conn, PreparedStatement type, String name) throws SQLException
+	{
+		int oid;
+		int arrayOid;
+		String typeName;
+
+		try(ResultSet rset = type.executeQuery())
+		{
+			if(!rset.next())
+			{
+				throw new IllegalArgumentException("Not a composite type: "+name);
+			}
+
+			oid = rset.getInt(1);
+			arrayOid = rset.getInt(2);
+			typeName = rset.getString(3);
+		}
+
+		CompositeTypeDescriptor ret = get(oid);
+
+		if(ret != null)
+		{
+			return ret;
+		}
+
+		List<Integer> fieldTypes = new ArrayList<Integer>();
+
+		try(PreparedStatement st = conn.prepareStatement(FIELD_TYPES_QUERY))
+		{
+			st.setInt(1, oid);
+
+			try(ResultSet rset = st.executeQuery())
+			{
+				while(rset.next())
+				{
+					fieldTypes.add(rset.getInt(1));
+				}
+			}
+		}
+
+		for(int fieldType : fieldTypes)
+		{
+			load(conn, fieldType);
+		}
+
+		ret = new CompositeTypeDescriptor(typeName, oid, arrayOid);
+
+		try(PreparedStatement st = conn.prepareStatement(CompositeTypeDescriptor.ATTRIBUTES_QUERY))
+		{
+			st.setInt(1, oid);
+
+			try(ResultSet rset = st.executeQuery())
+			{
+				ret.addAll(rset, this);
+			}
+		}
+
+		return register(ret);
+	}
+}
@@ -1,9 +1,12 @@
 package org.ketsu.jdbc;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Date;
 
 /*
  * The MIT License (MIT)
@@ -30,19 +33,32 @@ import java.util.TreeMap;
  */
 public class CustomType
 {
-	protected final Map<Integer, CustomTypeItem> val = new TreeMap<Integer, CustomTypeItem>();
+	protected static final byte UNSET = 0;
+	protected static final byte OBJECT = 1;
+	// written without quotes
+	protected static final byte RAW = 2;
+	protected static final byte INT = 3;
+	protected static final byte LONG = 4;
+	protected static final byte DOUBLE = 5;
+	protected static final byte BOOLEAN = 6;
+	// epoch day
+	protected static final byte DATE = 7;
+	// epoch micros of a wall clock time
+	protected static final byte TIMESTAMP = 8;
+	// epoch micros of a point in time
+	protected static final byte TIMESTAMPTZ = 9;
+	// float bits, written with the digits of the float
+	protected static final byte FLOAT = 10;
 
-	public static class CustomTypeItem
-	{
-		public final String value;
-		public final boolean noQuote;
-
-		public CustomTypeItem(String v, boolean nq)
-		{
-			value = v;
-			noQuote = nq;
-		}
-	}
+	/*
+	 * fields by their index, primitives are kept unboxed (doubles as their
+	 * bits) and fields that are not set are skipped when writing
+	 */
+	protected byte[] kinds = new byte[8];
+	protected Object[] objects;
+	protected long[] primitives;
+	protected int length;
+	protected int count;
 
 	public CustomType()
 	{
@@ -51,48 +67,12 @@ public class CustomType
 
 	public void set(int idx, Object[] arr, boolean noQuote)
 	{
-		if(arr == null)
-		{
-			val.put(idx, new CustomTypeItem(null, true));
-			return;
-		}
-
-		StringBuilder v = new StringBuilder();
-
-		v.append("\"{");
-
-		if(arr.length > 0)
-		{
-			for(int i = 0; i < arr.length; i++)
-			{
-				if(arr[i] == null)
-				{
-					v.append("NULL,");
-				}
-				else if(noQuote)
-				{
-					v.append(arr[i].toString());
-					v.append(",");
-				}
-				else
-				{
-					v.append("\"\"");
-					v.append(arr[i].toString().replace("\\", "\\\\\\\\").replace("\"", "\\\\\"\""));
-					v.append("\"\",");
-				}
-			}
-
-			v.deleteCharAt(v.length()-1);
-		}
-
-		v.append("}\"");
-
-		val.put(idx, new CustomTypeItem(v.toString(), true));
+		setObject(idx, arr, noQuote ? RAW : OBJECT);
 	}
 
 	public void set(int idx, Object v, boolean noQuote)
 	{
-		val.put(idx, new CustomTypeItem(v == null ? null : v.toString(), noQuote));
+		setObject(idx, v, noQuote ? RAW : OBJECT);
 	}
 
 	public void set(int idx, Object[] arr)
@@ -117,7 +97,26 @@ public class CustomType
 
 	public void set(int idx, Number v)
 	{
-		set(idx, v, true);
+		if(v instanceof Integer || v instanceof Short || v instanceof Byte)
+		{
+			setInt(idx, v.intValue());
+		}
+		else if(v instanceof Long)
+		{
+			setLong(idx, v.longValue());
+		}
+		else if(v instanceof Double)
+		{
+			setDouble(idx, v.doubleValue());
+		}
+		else if(v instanceof Float)
+		{
+			setFloat(idx, v.floatValue());
+		}
+		else
+		{
+			set(idx, v, true);
+		}
 	}
 
 	public void set(int idx, CustomTypeArrayBuilder[] arr)
@@ -127,49 +126,332 @@ public class CustomType
 
 	public void set(int idx, CustomTypeArrayBuilder v)
 	{
-		set(idx, v.getArray(), true);
+		set(idx, v, true);
 	}
 
-	@Override
-	public String toString()
+	public void set(int idx, CustomType v)
 	{
-		if(val.size() == 0)
+		set(idx, v, true);
+	}
+
+	public void setInt(int idx, int v)
+	{
+		setPrimitive(idx, v, INT);
+	}
+
+	public void setLong(int idx, long v)
+	{
+		setPrimitive(idx, v, LONG);
+	}
+
+	public void setDouble(int idx, double v)
+	{
+		setPrimitive(idx, Double.doubleToRawLongBits(v), DOUBLE);
+	}
+
+	public void setFloat(int idx, float v)
+	{
+		setPrimitive(idx, Float.floatToRawIntBits(v), FLOAT);
+	}
+
+	public void setBoolean(int idx, boolean v)
+	{
+		setPrimitive(idx, v ? 1 : 0, BOOLEAN);
+	}
+
+	public void set(int idx, LocalDate v)
+	{
+		if(v == null)
 		{
-			return "NULL";
+			set(idx, (Object) null);
 		}
+		else
+		{
+			setPrimitive(idx, v.toEpochDay(), DATE);
+		}
+	}
 
-		StringBuilder ret = new StringBuilder();
+	public void set(int idx, LocalDateTime v)
+	{
+		if(v == null)
+		{
+			set(idx, (Object) null);
+		}
+		else
+		{
+			setPrimitive(idx, PgDateTime.toEpochMicros(v), TIMESTAMP);
+		}
+	}
 
-		ret.append("(");
+	public void set(int idx, Instant v)
+	{
+		if(v == null)
+		{
+			set(idx, (Object) null);
+		}
+		else
+		{
+			setEpochMicros(idx, PgDateTime.toEpochMicros(v));
+		}
+	}
 
-		Iterator<CustomTypeItem> iter = val.values().iterator();
-		while(iter.hasNext())
+	public void set(int idx, OffsetDateTime v)
+	{
+		set(idx, v == null ? null : v.toInstant());
+	}
+
+	/**
+	 * Sets a java.util.Date as a point in time, java.sql types by their wall clock values like their toString().
+	 */
+	public void set(int idx, Date v)
+	{
+		if(v instanceof java.sql.Timestamp)
+		{
+			set(idx, ((java.sql.Timestamp) v).toLocalDateTime());
+		}
+		else if(v instanceof java.sql.Date)
+		{
+			set(idx, ((java.sql.Date) v).toLocalDate());
+		}
+		else if(v instanceof java.sql.Time)
 		{
-			CustomTypeItem v = iter.next();
+			set(idx, (Object) v);
+		}
+		else
+		{
+			set(idx, v == null ? null : v.toInstant());
+		}
+	}
 
-			if(v.value == null)
-			{
-				//
-			}
-			else if(!v.noQuote)
+	/**
+	 * Sets a bytea, written in the hex format.
+	 */
+	public void setBytes(int idx, byte[] v)
+	{
+		setObject(idx, v, OBJECT);
+	}
+
+	/**
+	 * Sets a timestamp with time zone, written in UTC.
+	 *
+	 * @param micros microseconds since 1970-01-01 UTC
+	 */
+	public void setEpochMicros(int idx, long micros)
+	{
+		setPrimitive(idx, micros, TIMESTAMPTZ);
+	}
+
+	public void set(int idx, int[] arr)
+	{
+		setObject(idx, arr, RAW);
+	}
+
+	public void set(int idx, long[] arr)
+	{
+		setObject(idx, arr, RAW);
+	}
+
+	public void set(int idx, double[] arr)
+	{
+		setObject(idx, arr, RAW);
+	}
+
+	public boolean isEmpty()
+	{
+		return count == 0;
+	}
+
+	protected void setObject(int idx, Object v, byte kind)
+	{
+		put(idx, kind);
+
+		if(objects == null)
+		{
+			objects = new Object[kinds.length];
+		}
+
+		objects[idx] = v;
+	}
+
+	protected void setPrimitive(int idx, long v, byte kind)
+	{
+		put(idx, kind);
+
+		if(primitives == null)
+		{
+			primitives = new long[kinds.length];
+		}
+
+		primitives[idx] = v;
+
+		if(objects != null)
+		{
+			objects[idx] = null;
+		}
+	}
+
+	protected void put(int idx, byte kind)
+	{
+		if(idx >= kinds.length)
+		{
+			int size = Math.max(kinds.length * 2, idx + 1);
+
+			kinds = Arrays.copyOf(kinds, size);
+
+			if(objects != null)
 			{
-				ret.append("\"");
-				ret.append(v.value.replace("\\", "\\\\").replace("\"", "\"\""));
-				ret.append("\"");
+				objects = Arrays.copyOf(objects, size);
 			}
-			else
+
+			if(primitives != null)
 			{
-				ret.append(v.value);
+				primitives = Arrays.copyOf(primitives, size);
 			}
+		}
+
+		if(kinds[idx] == UNSET)
+		{
+			count++;
+		}
+
+		kinds[idx] = kind;
+
+		if(idx >= length)
+		{
+			length = idx + 1;
+		}
+	}
+
+	/**
+	 * @return the value of a field, primitives boxed, null if the field is not set
+	 */
+	protected Object get(int idx)
+	{
+		switch(idx < length ? kinds[idx] : UNSET)
+		{
+			case UNSET:
+				return null;
+
+			case INT:
+				return (int) primitives[idx];
+
+			case LONG:
+				return primitives[idx];
+
+			case DOUBLE:
+				return Double.longBitsToDouble(primitives[idx]);
+
+			case FLOAT:
+				return Float.intBitsToFloat((int) primitives[idx]);
 
-			if(iter.hasNext())
+			case BOOLEAN:
+				return primitives[idx] != 0;
+
+			case DATE:
+				return LocalDate.ofEpochDay(primitives[idx]);
+
+			case TIMESTAMP:
+				return PgDateTime.toLocalDateTime(primitives[idx]);
+
+			case TIMESTAMPTZ:
+				return PgDateTime.toInstant(primitives[idx]);
+
+			default:
+				return objects[idx];
+		}
+	}
+
+	/**
+	 * @return true if a set field is written as NULL
+	 */
+	protected boolean isNull(int idx)
+	{
+		if(kinds[idx] != OBJECT && kinds[idx] != RAW)
+		{
+			return false;
+		}
+
+		Object v = objects[idx];
+
+		return v == null || v instanceof CustomType && ((CustomType) v).isEmpty();
+	}
+
+	public void write(CustomTypeWriter w)
+	{
+		if(count == 0)
+		{
+			w.writeNull();
+			return;
+		}
+
+		w.beginType();
+
+		for(int i = 0; i < length; i++)
+		{
+			if(kinds[i] != UNSET)
 			{
-				ret.append(",");
+				write(w, i);
 			}
 		}
 
-		ret.append(")");
+		w.endType();
+	}
+
+	/**
+	 * Writes a single set field.
+	 */
+	protected void write(CustomTypeWriter w, int idx)
+	{
+		switch(kinds[idx])
+		{
+			case INT:
+			case LONG:
+				w.writeLong(primitives[idx]);
+				break;
+
+			case DOUBLE:
+				w.writeDouble(Double.longBitsToDouble(primitives[idx]));
+				break;
+
+			case FLOAT:
+				w.writeFloat(Float.intBitsToFloat((int) primitives[idx]));
+				break;
+
+			case BOOLEAN:
+				w.writeBoolean(primitives[idx] != 0);
+				break;
+
+			case DATE:
+				w.writeDate(primitives[idx]);
+				break;
+
+			case TIMESTAMP:
+			case TIMESTAMPTZ:
+				w.writeTimestamp(primitives[idx], kinds[idx] == TIMESTAMPTZ);
+				break;
+
+			default:
+				w.writeValue(objects[idx], kinds[idx] == RAW);
+		}
+	}
+
+	public CustomTypeBinary toBinary(CompositeTypeDescriptor type)
+	{
+		return CustomTypeBinary.create(type, this);
+	}
+
+	@Override
+	public String toString()
+	{
+		if(count == 0)
+		{
+			return "NULL";
+		}
+
+		CustomTypeWriter w = new CustomTypeWriter();
+
+		write(w);
 
-		return ret.toString();
+		return w.toString();
 	}
 }
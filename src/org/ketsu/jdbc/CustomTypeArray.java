@@ -4,7 +4,6 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.Map;
 
 import com.google.common.collect.Multimap;
@@ -42,9 +41,17 @@ public class CustomTypeArray implements java.sql.Array
 	protected final String stringValue;
 
 	public CustomTypeArray(String n, Collection<CustomType> t)
+	{
+		this(n, toString(n, t));
+	}
+
+	/**
+	 * @param literal the already written array literal
+	 */
+	protected CustomTypeArray(String n, String literal)
 	{
 		name = n;
-		stringValue = toString(n, t);
+		stringValue = literal;
 	}
 
 	@Override
@@ -60,40 +67,36 @@ public class CustomTypeArray implements java.sql.Array
 			return "NULL";
 		}
 
-		StringBuilder b = new StringBuilder();
+		CustomTypeWriter w = new CustomTypeWriter();
 
-		b.append("{");
+		write(w, t);
 
-		if(!t.isEmpty())
+		return w.toString();
+	}
+
+	public static void write(CustomTypeWriter w, Collection<CustomType> t)
+	{
+		if(t == null)
 		{
-			Iterator<CustomType> iter = t.iterator();
-			while(iter.hasNext())
+			w.writeNull();
+			return;
+		}
+
+		w.beginArray();
+
+		for(CustomType tt : t)
+		{
+			if(tt == null)
 			{
-				CustomType tt = iter.next();
-
-				String s = tt.toString();
-
-				if(s == null)
-				{
-					b.append("NULL");
-				}
-				else
-				{
-					b.append("\"");
-					b.append(s.replace("\\", "\\\\").replace("\"", "\\\""));
-					b.append("\"");
-				}
-
-				if(iter.hasNext())
-				{
-					b.append(",");
-				}
+				w.writeNull();
+			}
+			else
+			{
+				tt.write(w);
 			}
 		}
 
-		b.append("}");
-
-		return b.toString();
+		w.endArray();
 	}
 
 	@Override
@@ -41,6 +41,11 @@ public abstract class CustomTypeArrayBuilder
 		return new CustomTypeArray(type, data);
 	}
 
+	public CustomTypeBinary getBinaryArray(CompositeTypeDescriptor descriptor)
+	{
+		return CustomTypeBinary.create(descriptor, data);
+	}
+
 	public boolean isEmpty()
 	{
 		return data.isEmpty();
@@ -51,8 +56,18 @@ public abstract class CustomTypeArrayBuilder
 		data.add(item);
 	}
 
+	public void write(CustomTypeWriter w)
+	{
+		CustomTypeArray.write(w, data);
+	}
+
 	@Override
 	public String toString()
 	{
-		return getArray().toString();
+		CustomTypeWriter w = new CustomTypeWriter();
+
+		write(w);
+
+		return w.toString();
 	}
+}
@@ -0,0 +1,74 @@
+package org.ketsu.jdbc;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * A composite or composite array in the binary format, with the same methods
+ * as org.postgresql.util.PGBinaryObject, so that it can be passed to a PGobject
+ * subclass implementing it without copying.
+ */
+public class CustomTypeBinary
+{
+	protected final String type;
+	protected final byte[] bytes;
+
+	/**
+	 * @param typeName name of the type, arrays are prefixed by _
+	 */
+	public CustomTypeBinary(String typeName, byte[] bytes)
+	{
+		type = typeName;
+		this.bytes = bytes;
+	}
+
+	public static CustomTypeBinary create(CompositeTypeDescriptor type, CustomType v)
+	{
+		return new CustomTypeBinary(type.getName(), new CustomTypeBinaryWriter().writeType(type, v).toByteArray());
+	}
+
+	public static CustomTypeBinary create(CompositeTypeDescriptor type, java.util.Collection<CustomType> v)
+	{
+		return new CustomTypeBinary("_"+type.getName(), new CustomTypeBinaryWriter().writeArray(type, v).toByteArray());
+	}
+
+	public String getType()
+	{
+		return type;
+	}
+
+	public byte[] getBytes()
+	{
+		return bytes;
+	}
+
+	public int lengthInBytes()
+	{
+		return bytes.length;
+	}
+
+	public void toBytes(byte[] dest, int offset)
+	{
+		System.arraycopy(bytes, 0, dest, offset, bytes.length);
+	}
+}
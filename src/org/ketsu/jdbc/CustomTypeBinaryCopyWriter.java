@@ -0,0 +1,137 @@
+package org.ketsu.jdbc;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Streams rows in the COPY binary format, e.g to a PGCopyOutputStream for
+ * <code>COPY users FROM STDIN (FORMAT binary)</code>.
+ *
+ * The columns are described by a {@link CompositeTypeDescriptor} and matched
+ * to the fields of every {@link CustomType} by position like with
+ * {@link CustomTypeBinaryWriter}. Rows are buffered and written out in chunks.
+ */
+public class CustomTypeBinaryCopyWriter implements Closeable, Flushable
+{
+	protected static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+
+	protected final OutputStream out;
+	protected final CompositeTypeDescriptor columns;
+	protected final int chunkSize;
+
+	protected final CustomTypeBinaryWriter writer;
+	protected long rows;
+
+	public CustomTypeBinaryCopyWriter(OutputStream out, CompositeTypeDescriptor columns)
+	{
+		this(out, columns, 65536);
+	}
+
+	public CustomTypeBinaryCopyWriter(OutputStream out, CompositeTypeDescriptor columns, int chunkSize)
+	{
+		this.out = out;
+		this.columns = columns;
+		this.chunkSize = chunkSize;
+
+		writer = new CustomTypeBinaryWriter(chunkSize + chunkSize / 4);
+
+		writer.writeBytes(SIGNATURE, 0, SIGNATURE.length);
+		// flags, header extension length
+		writer.writeInt(0);
+		writer.writeInt(0);
+	}
+
+	public CustomTypeBinaryCopyWriter writeRow(CustomType row) throws IOException
+	{
+		int n = columns.getSize();
+
+		writer.writeShort(n);
+
+		for(int i = 1; i <= n; i++)
+		{
+			writer.writeField(columns.getFieldOid(i), columns.getFieldType(i), row, i);
+		}
+
+		rows++;
+
+		if(writer.size() >= chunkSize)
+		{
+			writeChunk();
+		}
+
+		return this;
+	}
+
+	public CustomTypeBinaryCopyWriter writeRows(Collection<CustomType> rows) throws IOException
+	{
+		for(CustomType row : rows)
+		{
+			writeRow(row);
+		}
+
+		return this;
+	}
+
+	public CustomTypeBinaryCopyWriter writeRows(CustomTypeArrayBuilder rows) throws IOException
+	{
+		return writeRows(rows.data);
+	}
+
+	public long getRowCount()
+	{
+		return rows;
+	}
+
+	protected void writeChunk() throws IOException
+	{
+		writer.writeTo(out);
+		writer.reset();
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		writeChunk();
+
+		out.flush();
+	}
+
+	/**
+	 * Writes the trailer and closes the stream, which ends the COPY.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		writer.writeShort(-1);
+
+		writeChunk();
+
+		out.close();
+	}
+}
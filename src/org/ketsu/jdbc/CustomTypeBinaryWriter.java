@@ -0,0 +1,835 @@
+package org.ketsu.jdbc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.UUID;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Writes composite types and arrays in the binary format of record_recv and
+ * array_recv into a reusable buffer.
+ *
+ * Values are encoded by the OIDs of the {@link CompositeTypeDescriptor}, the
+ * fields of a {@link CustomType} are matched to it by position and fields that
+ * are not set are NULL.
+ */
+public class CustomTypeBinaryWriter
+{
+	protected byte[] buffer;
+	protected int size;
+
+	public CustomTypeBinaryWriter()
+	{
+		this(1024);
+	}
+
+	public CustomTypeBinaryWriter(int capacity)
+	{
+		buffer = new byte[capacity];
+	}
+
+	public void reset()
+	{
+		size = 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the internal buffer, valid up to size() until the next write
+	 */
+	public byte[] getBuffer()
+	{
+		return buffer;
+	}
+
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(buffer, size);
+	}
+
+	public void writeTo(OutputStream out) throws IOException
+	{
+		out.write(buffer, 0, size);
+	}
+
+	public CustomTypeBinaryWriter writeType(CompositeTypeDescriptor type, CustomType v)
+	{
+		int n = type.getSize();
+
+		writeInt(n);
+
+		for(int i = 1; i <= n; i++)
+		{
+			int oid = type.getFieldOid(i);
+
+			writeInt(oid);
+			writeField(oid, type.getFieldType(i), v, i);
+		}
+
+		return this;
+	}
+
+	public CustomTypeBinaryWriter writeArray(CompositeTypeDescriptor type, Collection<CustomType> v)
+	{
+		writeArray(type.getOid(), type, v);
+
+		return this;
+	}
+
+	/**
+	 * Writes a length-prefixed value, -1 for NULLs.
+	 *
+	 * @param type descriptor of a composite value or of the elements of a composite array, null otherwise
+	 */
+	public CustomTypeBinaryWriter writeValue(int oid, CompositeTypeDescriptor type, Object v)
+	{
+		if(v == null || v instanceof CustomType && ((CustomType) v).isEmpty())
+		{
+			writeInt(-1);
+			return this;
+		}
+
+		int pos = size;
+
+		writeInt(0);
+		writeData(oid, type, v);
+
+		patchInt(pos, size - pos - 4);
+
+		return this;
+	}
+
+	/**
+	 * Writes a length-prefixed field of the type, primitive fields without boxing.
+	 */
+	public CustomTypeBinaryWriter writeField(int oid, CompositeTypeDescriptor type, CustomType v, int idx)
+	{
+		switch(idx < v.length ? v.kinds[idx] : CustomType.UNSET)
+		{
+			case CustomType.UNSET:
+				writeInt(-1);
+				break;
+
+			case CustomType.INT:
+			case CustomType.LONG:
+				writeLongValue(oid, v.primitives[idx]);
+				break;
+
+			case CustomType.DOUBLE:
+				writeDoubleValue(oid, Double.longBitsToDouble(v.primitives[idx]));
+				break;
+
+			case CustomType.FLOAT:
+				float f = Float.intBitsToFloat((int) v.primitives[idx]);
+
+				// as a float8 the same value as from the text format
+				writeDoubleValue(oid, oid == PgOid.FLOAT4 ? f : Double.parseDouble(Float.toString(f)));
+				break;
+
+			case CustomType.DATE:
+				if(oid == PgOid.DATE)
+				{
+					writeInt(4);
+					writeInt((int) (v.primitives[idx] - BinaryUDTValue.PG_EPOCH_DAYS));
+				}
+				else
+				{
+					writeValue(oid, type, v.get(idx));
+				}
+				break;
+
+			case CustomType.TIMESTAMP:
+			case CustomType.TIMESTAMPTZ:
+				if(oid == PgOid.TIMESTAMP || oid == PgOid.TIMESTAMPTZ)
+				{
+					writeInt(8);
+					writeLong(toPgMicros(v.primitives[idx]));
+				}
+				else
+				{
+					writeValue(oid, type, v.get(idx));
+				}
+				break;
+
+			default:
+				writeValue(oid, type, v.get(idx));
+		}
+
+		return this;
+	}
+
+	protected void writeLongValue(int oid, long v)
+	{
+		switch(oid)
+		{
+			case PgOid.INT2:
+				writeInt(2);
+				writeShort(checkRange(oid, v));
+				break;
+
+			case PgOid.INT4:
+			case PgOid.OID:
+				writeInt(4);
+				writeInt(checkRange(oid, v));
+				break;
+
+			case PgOid.INT8:
+				writeInt(8);
+				writeLong(v);
+				break;
+
+			case PgOid.FLOAT8:
+				writeDoubleValue(oid, v);
+				break;
+
+			default:
+				writeValue(oid, null, v);
+		}
+	}
+
+	protected void writeDoubleValue(int oid, double v)
+	{
+		switch(oid)
+		{
+			case PgOid.FLOAT4:
+				writeInt(4);
+				writeInt(Float.floatToIntBits((float) v));
+				break;
+
+			case PgOid.FLOAT8:
+				writeInt(8);
+				writeLong(Double.doubleToLongBits(v));
+				break;
+
+			default:
+				writeValue(oid, null, v);
+		}
+	}
+
+	protected void writeData(int oid, CompositeTypeDescriptor type, Object v)
+	{
+		if(type != null && oid == type.getOid())
+		{
+			writeType(type, (CustomType) v);
+			return;
+		}
+
+		int element = type != null && oid == type.getArrayOid() ? type.getOid() : PgOid.elementOf(oid);
+
+		if(element != 0)
+		{
+			writeArray(element, type, v);
+			return;
+		}
+
+		switch(oid)
+		{
+			case PgOid.BOOL:
+				writeByte(v instanceof Boolean ? ((Boolean) v ? 1 : 0) : v.toString().startsWith("t") ? 1 : 0);
+				break;
+
+			case PgOid.INT2:
+			case PgOid.INT4:
+			case PgOid.OID:
+				int n = checkRange(oid, toLong(v));
+
+				if(oid == PgOid.INT2)
+				{
+					writeShort(n);
+				}
+				else
+				{
+					writeInt(n);
+				}
+				break;
+
+			case PgOid.INT8:
+				writeLong(toLong(v));
+				break;
+
+			case PgOid.FLOAT4:
+				writeInt(Float.floatToIntBits(toNumber(v).floatValue()));
+				break;
+
+			case PgOid.FLOAT8:
+				writeLong(Double.doubleToLongBits(toNumber(v).doubleValue()));
+				break;
+
+			case PgOid.NUMERIC:
+				writeNumeric(v instanceof BigDecimal ? (BigDecimal) v : new BigDecimal(v.toString()));
+				break;
+
+			case PgOid.BYTEA:
+				writeBytes((byte[]) v, 0, ((byte[]) v).length);
+				break;
+
+			case PgOid.DATE:
+				writeInt((int) (toLocalDate(v).toEpochDay() - BinaryUDTValue.PG_EPOCH_DAYS));
+				break;
+
+			case PgOid.TIME:
+				writeLong((v instanceof LocalTime ? (LocalTime) v : LocalTime.parse(v.toString())).toNanoOfDay() / 1000);
+				break;
+
+			case PgOid.TIMESTAMP:
+			case PgOid.TIMESTAMPTZ:
+				writeLong(toMicros(v));
+				break;
+
+			case PgOid.UUID:
+				UUID uuid = v instanceof UUID ? (UUID) v : UUID.fromString(v.toString());
+
+				writeLong(uuid.getMostSignificantBits());
+				writeLong(uuid.getLeastSignificantBits());
+				break;
+
+			case PgOid.JSONB:
+				// version
+				writeByte(1);
+				writeUtf8(v.toString());
+				break;
+
+			case PgOid.INTERVAL:
+				writeInterval(v);
+				break;
+
+			case PgOid.TIMETZ:
+				writeTimeTz(v);
+				break;
+
+			default:
+				// text types, enums etc.
+				writeUtf8(v.toString());
+		}
+	}
+
+	protected void writeArray(int element, CompositeTypeDescriptor type, Object v)
+	{
+		if(v instanceof int[] || v instanceof long[] || v instanceof double[])
+		{
+			writePrimitiveArray(element, v);
+			return;
+		}
+
+		int[] dims = new int[6];
+		int ndim = 0;
+
+		for(Object o = v; isSequence(o); o = first(o))
+		{
+			if(ndim == dims.length)
+			{
+				throw new IllegalArgumentException("Too many dimensions");
+			}
+
+			dims[ndim++] = length(o);
+
+			if(dims[ndim - 1] == 0)
+			{
+				ndim = ndim == 1 ? 0 : ndim;
+				break;
+			}
+		}
+
+		writeInt(ndim);
+
+		int flags = size;
+
+		writeInt(0);
+		writeInt(element);
+
+		for(int i = 0; i < ndim; i++)
+		{
+			writeInt(dims[i]);
+			writeInt(1);
+		}
+
+		if(ndim > 0 && writeElements(element, type, v, dims, 0, ndim))
+		{
+			patchInt(flags, 1);
+		}
+	}
+
+	protected void writePrimitiveArray(int element, Object v)
+	{
+		int len = v instanceof int[] ? ((int[]) v).length : v instanceof long[] ? ((long[]) v).length : ((double[]) v).length;
+
+		writeInt(len == 0 ? 0 : 1);
+		writeInt(0);
+		writeInt(element);
+
+		if(len == 0)
+		{
+			return;
+		}
+
+		writeInt(len);
+		writeInt(1);
+
+		for(int i = 0; i < len; i++)
+		{
+			if(v instanceof int[])
+			{
+				writeLongValue(element, ((int[]) v)[i]);
+			}
+			else if(v instanceof long[])
+			{
+				writeLongValue(element, ((long[]) v)[i]);
+			}
+			else
+			{
+				writeDoubleValue(element, ((double[]) v)[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return true if there were NULLs
+	 */
+	protected boolean writeElements(int element, CompositeTypeDescriptor type, Object v, int[] dims, int dim, int ndim)
+	{
+		if(!isSequence(v) || length(v) != dims[dim])
+		{
+			throw new IllegalArgumentException("Multidimensional arrays must be rectangular");
+		}
+
+		boolean nulls = false;
+
+		Iterator<?> iter = iterator(v);
+		while(iter.hasNext())
+		{
+			Object o = iter.next();
+
+			if(dim < ndim - 1)
+			{
+				nulls |= writeElements(element, type, o, dims, dim + 1, ndim);
+			}
+			else
+			{
+				nulls |= o == null;
+
+				writeValue(element, type, o);
+			}
+		}
+
+		return nulls;
+	}
+
+	protected static boolean isSequence(Object v)
+	{
+		return v instanceof Object[] || v instanceof Collection || v instanceof CustomTypeArrayBuilder;
+	}
+
+	protected static int length(Object v)
+	{
+		if(v instanceof Object[])
+		{
+			return ((Object[]) v).length;
+		}
+
+		if(v instanceof CustomTypeArrayBuilder)
+		{
+			return ((CustomTypeArrayBuilder) v).data.size();
+		}
+
+		return ((Collection<?>) v).size();
+	}
+
+	protected static Object first(Object v)
+	{
+		Iterator<?> iter = iterator(v);
+
+		return iter.hasNext() ? iter.next() : null;
+	}
+
+	protected static Iterator<?> iterator(Object v)
+	{
+		if(v instanceof Object[])
+		{
+			return Arrays.asList((Object[]) v).iterator();
+		}
+
+		if(v instanceof CustomTypeArrayBuilder)
+		{
+			return ((CustomTypeArrayBuilder) v).data.iterator();
+		}
+
+		return ((Collection<?>) v).iterator();
+	}
+
+	protected static Number toNumber(Object v)
+	{
+		if(v instanceof Number)
+		{
+			return (Number) v;
+		}
+
+		return new BigDecimal(v.toString());
+	}
+
+	/**
+	 * @return the integer value, a fraction or a value outside of a long is an error
+	 */
+	protected static long toLong(Object v)
+	{
+		if(v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte)
+		{
+			return ((Number) v).longValue();
+		}
+
+		try
+		{
+			return new BigDecimal(v.toString()).longValueExact();
+		}
+		catch(ArithmeticException e)
+		{
+			throw new IllegalArgumentException("Not an integer: "+v, e);
+		}
+	}
+
+	/**
+	 * @return the value if it fits the type, an oid may be given as unsigned
+	 */
+	protected static int checkRange(int oid, long v)
+	{
+		long min = oid == PgOid.INT2 ? Short.MIN_VALUE : Integer.MIN_VALUE;
+		long max = oid == PgOid.INT2 ? Short.MAX_VALUE : oid == PgOid.OID ? 0xffffffffL : Integer.MAX_VALUE;
+
+		if(v < min || v > max)
+		{
+			throw new IllegalArgumentException("Value out of range for "+PgOid.nameOf(oid)+": "+v);
+		}
+
+		return (int) v;
+	}
+
+	/**
+	 * Writes microseconds, days and months from a Duration, a Period or the text.
+	 */
+	protected void writeInterval(Object v)
+	{
+		if(v instanceof Duration)
+		{
+			writeLong(PgDateTime.toMicros((Duration) v));
+			writeInt(0);
+			writeInt(0);
+		}
+		else if(v instanceof Period)
+		{
+			Period p = (Period) v;
+
+			writeLong(0);
+			writeInt(p.getDays());
+			writeInt(Math.toIntExact(p.toTotalMonths()));
+		}
+		else
+		{
+			long[] interval = PgDateTime.parseInterval(v.toString());
+
+			writeLong(interval[0]);
+			writeInt((int) interval[1]);
+			writeInt((int) interval[2]);
+		}
+	}
+
+	/**
+	 * Writes microseconds of the day and the offset in seconds west of UTC.
+	 */
+	protected void writeTimeTz(Object v)
+	{
+		if(v instanceof OffsetTime)
+		{
+			OffsetTime t = (OffsetTime) v;
+
+			writeLong(t.toLocalTime().toNanoOfDay() / 1000);
+			writeInt(-t.getOffset().getTotalSeconds());
+		}
+		else
+		{
+			String s = v.toString();
+
+			writeLong(PgDateTime.parseMicrosOfDay(s, 0, PgDateTime.offsetStart(s, 0, s.length())));
+			writeInt(-PgDateTime.parseOffsetSeconds(s, 0, s.length()));
+		}
+	}
+
+	protected static LocalDate toLocalDate(Object v)
+	{
+		if(v instanceof LocalDate)
+		{
+			return (LocalDate) v;
+		}
+
+		if(v instanceof java.sql.Date)
+		{
+			return ((java.sql.Date) v).toLocalDate();
+		}
+
+		if(v instanceof LocalDateTime)
+		{
+			return ((LocalDateTime) v).toLocalDate();
+		}
+
+		return LocalDate.parse(v.toString());
+	}
+
+	/**
+	 * @return microseconds since 2000-01-01, timestamps without a time zone are taken as UTC
+	 */
+	protected static long toMicros(Object v)
+	{
+		Instant i;
+
+		if(v instanceof Instant)
+		{
+			i = (Instant) v;
+		}
+		else if(v instanceof LocalDateTime)
+		{
+			i = ((LocalDateTime) v).toInstant(ZoneOffset.UTC);
+		}
+		else if(v instanceof OffsetDateTime)
+		{
+			i = ((OffsetDateTime) v).toInstant();
+		}
+		else if(v instanceof ZonedDateTime)
+		{
+			i = ((ZonedDateTime) v).toInstant();
+		}
+		else if(v instanceof Date)
+		{
+			i = ((Date) v).toInstant();
+		}
+		else
+		{
+			i = Instant.parse(v.toString());
+		}
+
+		return toPgMicros(PgDateTime.toEpochMicros(i));
+	}
+
+	/**
+	 * @return microseconds since 2000-01-01, infinities are kept
+	 */
+	protected static long toPgMicros(long micros)
+	{
+		if(micros == Long.MAX_VALUE || micros == Long.MIN_VALUE)
+		{
+			return micros;
+		}
+
+		return micros - BinaryUDTValue.PG_EPOCH_SECONDS * PgDateTime.MICROS_PER_SECOND;
+	}
+
+	protected void writeNumeric(BigDecimal v)
+	{
+		int dscale = Math.max(v.scale(), 0);
+
+		StringBuilder digits = new StringBuilder(v.unscaledValue().abs().toString());
+		int scale = v.scale();
+
+		for(; scale < 0; scale++)
+		{
+			digits.append('0');
+		}
+
+		while(digits.length() < scale)
+		{
+			digits.insert(0, '0');
+		}
+
+		// align the decimal point to base 10000 digits
+		int integer = digits.length() - scale;
+		int lead = (4 - integer % 4) % 4;
+
+		for(int i = 0; i < lead; i++)
+		{
+			digits.insert(0, '0');
+		}
+
+		while(digits.length() % 4 != 0)
+		{
+			digits.append('0');
+		}
+
+		int weight = (integer + lead) / 4 - 1;
+		int from = 0;
+		int to = digits.length() / 4;
+
+		// no leading or trailing zero digits
+		while(from < to && digit(digits, from) == 0)
+		{
+			from++;
+			weight--;
+		}
+
+		while(to > from && digit(digits, to - 1) == 0)
+		{
+			to--;
+		}
+
+		writeShort(to - from);
+		writeShort(from == to ? 0 : weight);
+		writeShort(v.signum() < 0 ? 0x4000 : 0);
+		writeShort(dscale);
+
+		for(int i = from; i < to; i++)
+		{
+			writeShort(digit(digits, i));
+		}
+	}
+
+	protected static int digit(CharSequence digits, int group)
+	{
+		int value = 0;
+
+		for(int i = group * 4; i < group * 4 + 4; i++)
+		{
+			value = value * 10 + digits.charAt(i) - '0';
+		}
+
+		return value;
+	}
+
+	protected void writeUtf8(String v)
+	{
+		int len = v.length();
+
+		ensure(len * 3);
+
+		byte[] b = buffer;
+		int p = size;
+
+		for(int i = 0; i < len; i++)
+		{
+			char c = v.charAt(i);
+
+			if(c < 0x80)
+			{
+				b[p++] = (byte) c;
+			}
+			else if(c < 0x800)
+			{
+				b[p++] = (byte) (0xc0 | (c >> 6));
+				b[p++] = (byte) (0x80 | (c & 0x3f));
+			}
+			else if(Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(v.charAt(i + 1)))
+			{
+				int cp = Character.toCodePoint(c, v.charAt(++i));
+
+				b[p++] = (byte) (0xf0 | (cp >> 18));
+				b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				b[p++] = (byte) (0x80 | (cp & 0x3f));
+			}
+			else if(Character.isSurrogate(c))
+			{
+				// unpaired, like String.getBytes()
+				b[p++] = '?';
+			}
+			else
+			{
+				b[p++] = (byte) (0xe0 | (c >> 12));
+				b[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				b[p++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+
+		size = p;
+	}
+
+	public void writeBytes(byte[] v, int offset, int length)
+	{
+		ensure(length);
+
+		System.arraycopy(v, offset, buffer, size, length);
+
+		size += length;
+	}
+
+	public void writeByte(int v)
+	{
+		ensure(1);
+
+		buffer[size++] = (byte) v;
+	}
+
+	public void writeShort(int v)
+	{
+		ensure(2);
+
+		buffer[size++] = (byte) (v >> 8);
+		buffer[size++] = (byte) v;
+	}
+
+	public void writeInt(int v)
+	{
+		ensure(4);
+
+		patchInt(size, v);
+
+		size += 4;
+	}
+
+	public void writeLong(long v)
+	{
+		writeInt((int) (v >> 32));
+		writeInt((int) v);
+	}
+
+	protected void patchInt(int pos, int v)
+	{
+		buffer[pos] = (byte) (v >> 24);
+		buffer[pos + 1] = (byte) (v >> 16);
+		buffer[pos + 2] = (byte) (v >> 8);
+		buffer[pos + 3] = (byte) v;
+	}
+
+	protected void ensure(int n)
+	{
+		if(size + n > buffer.length)
+		{
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + n));
+		}
+	}
+}
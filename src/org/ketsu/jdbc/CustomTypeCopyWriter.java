@@ -0,0 +1,170 @@
+package org.ketsu.jdbc;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Streams rows in the COPY text format, e.g for
+ * <code>CopyManager.copyIn("COPY users FROM STDIN", ...)</code> over a
+ * PGCopyOutputStream wrapped in an UTF-8 OutputStreamWriter.
+ *
+ * The fields of every {@link CustomType} are the columns of a row from index
+ * 1. Every row has the given number of columns, fields that are not set are
+ * NULL like with {@link CustomTypeBinaryWriter}. Composite and array columns
+ * are written like with {@link CustomTypeWriter}. Rows are
+ * buffered and written out in chunks, so memory use does not depend on the
+ * amount of rows.
+ */
+public class CustomTypeCopyWriter implements Closeable, Flushable
+{
+	protected final Writer out;
+	protected final int columns;
+	protected final int chunkSize;
+
+	protected final StringBuilder buffer;
+	protected final CustomTypeWriter writer;
+	protected char[] chunk;
+	protected long rows;
+
+	public CustomTypeCopyWriter(Writer out, CompositeTypeDescriptor columns)
+	{
+		this(out, columns, 65536);
+	}
+
+	public CustomTypeCopyWriter(Writer out, CompositeTypeDescriptor columns, int chunkSize)
+	{
+		this(out, columns.getSize(), chunkSize);
+	}
+
+	public CustomTypeCopyWriter(Writer out, int columns, int chunkSize)
+	{
+		if(columns < 1)
+		{
+			throw new IllegalArgumentException("columns="+columns);
+		}
+
+		this.out = out;
+		this.columns = columns;
+		this.chunkSize = chunkSize;
+
+		buffer = new StringBuilder(chunkSize + chunkSize / 4);
+		writer = new CustomTypeWriter(buffer, true);
+		chunk = new char[buffer.capacity()];
+	}
+
+	/**
+	 * @throws IllegalArgumentException if a field after the last column is set
+	 */
+	public CustomTypeCopyWriter writeRow(CustomType row) throws IOException
+	{
+		if(row.length - 1 > columns)
+		{
+			throw new IllegalArgumentException("Row has "+(row.length - 1)+" fields, expected "+columns);
+		}
+
+		for(int i = 1; i <= columns; i++)
+		{
+			if(i > 1)
+			{
+				buffer.append('\t');
+			}
+
+			if(i >= row.length || row.kinds[i] == CustomType.UNSET || row.isNull(i))
+			{
+				buffer.append("\\N");
+			}
+			else
+			{
+				row.write(writer, i);
+			}
+		}
+
+		buffer.append('\n');
+
+		rows++;
+
+		if(buffer.length() >= chunkSize)
+		{
+			writeChunk();
+		}
+
+		return this;
+	}
+
+	public CustomTypeCopyWriter writeRows(Collection<CustomType> rows) throws IOException
+	{
+		for(CustomType row : rows)
+		{
+			writeRow(row);
+		}
+
+		return this;
+	}
+
+	public CustomTypeCopyWriter writeRows(CustomTypeArrayBuilder rows) throws IOException
+	{
+		return writeRows(rows.data);
+	}
+
+	public long getRowCount()
+	{
+		return rows;
+	}
+
+	protected void writeChunk() throws IOException
+	{
+		int len = buffer.length();
+
+		if(chunk.length < len)
+		{
+			chunk = new char[len];
+		}
+
+		buffer.getChars(0, len, chunk, 0);
+		out.write(chunk, 0, len);
+
+		writer.reset();
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		writeChunk();
+
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		writeChunk();
+
+		out.close();
+	}
+}
@@ -0,0 +1,532 @@
+package org.ketsu.jdbc;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+
+import org.ketsu.jdbc.UDTValue.Type;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Writes composite type and array literals in a single pass.
+ *
+ * Every value is written once straight into the output buffer, nested values
+ * are escaped for their nesting depth as they are written instead of being
+ * rendered separately and escaped again at every level.
+ */
+public class CustomTypeWriter
+{
+	protected final StringBuilder out;
+	// COPY text format, which escapes \ and control characters once more
+	protected final boolean copy;
+
+	/*
+	 * expansions of a " and a \ at every escaping depth, entries up to valid
+	 * are reused as long as the layers below them have not changed
+	 */
+	protected String[] quotes = new String[8];
+	protected String[] backslashes = new String[8];
+	protected Type[] layers = new Type[8];
+	protected int valid = 0;
+	protected int depth = 0;
+
+	protected Type[] containers = new Type[8];
+	protected boolean[] quoted = new boolean[8];
+	protected int[] counts = new int[8];
+	protected int level = 0;
+
+	public CustomTypeWriter()
+	{
+		this(new StringBuilder());
+	}
+
+	public CustomTypeWriter(StringBuilder out)
+	{
+		this(out, false);
+	}
+
+	/**
+	 * @param copy escape the values for the COPY text format
+	 */
+	public CustomTypeWriter(StringBuilder out, boolean copy)
+	{
+		this.out = out;
+		this.copy = copy;
+
+		quotes[0] = "\"";
+		backslashes[0] = copy ? "\\\\" : "\\";
+	}
+
+	public StringBuilder getBuffer()
+	{
+		return out;
+	}
+
+	public void reset()
+	{
+		out.setLength(0);
+
+		depth = 0;
+		level = 0;
+	}
+
+	public CustomTypeWriter beginType()
+	{
+		beginElement();
+
+		boolean q = level > 0;
+
+		if(q)
+		{
+			openQuote();
+		}
+
+		out.append('(');
+
+		push(Type.TYPE, q);
+
+		return this;
+	}
+
+	public CustomTypeWriter endType()
+	{
+		pop(Type.TYPE);
+
+		out.append(')');
+
+		if(quoted[level])
+		{
+			closeQuote();
+		}
+
+		return this;
+	}
+
+	public CustomTypeWriter beginArray()
+	{
+		beginElement();
+
+		// multidimensional arrays are not quoted
+		boolean q = level > 0 && containers[level - 1] == Type.TYPE;
+
+		if(q)
+		{
+			openQuote();
+		}
+
+		out.append('{');
+
+		push(Type.ARRAY, q);
+
+		return this;
+	}
+
+	public CustomTypeWriter endArray()
+	{
+		pop(Type.ARRAY);
+
+		out.append('}');
+
+		if(quoted[level])
+		{
+			closeQuote();
+		}
+
+		return this;
+	}
+
+	public CustomTypeWriter writeNull()
+	{
+		beginElement();
+
+		// NULL == ,, for types
+		if(level == 0 || containers[level - 1] == Type.ARRAY)
+		{
+			out.append("NULL");
+		}
+
+		return this;
+	}
+
+	public CustomTypeWriter writeString(CharSequence v)
+	{
+		if(v == null)
+		{
+			return writeNull();
+		}
+
+		beginElement();
+
+		if(level == 0)
+		{
+			appendEscaped(v);
+			return this;
+		}
+
+		openQuote();
+		appendEscaped(v);
+		closeQuote();
+
+		return this;
+	}
+
+	/**
+	 * Writes the value without quoting, e.g numbers.
+	 */
+	public CustomTypeWriter writeRaw(CharSequence v)
+	{
+		if(v == null)
+		{
+			return writeNull();
+		}
+
+		beginElement();
+		appendEscaped(v);
+
+		return this;
+	}
+
+	/**
+	 * Writes the digits straight into the output.
+	 */
+	public CustomTypeWriter writeLong(long v)
+	{
+		beginElement();
+
+		out.append(v);
+
+		return this;
+	}
+
+	public CustomTypeWriter writeDouble(double v)
+	{
+		beginElement();
+
+		out.append(v);
+
+		return this;
+	}
+
+	/**
+	 * Writes the digits of the float, e.g 0.1 and not the digits of the double closest to it.
+	 */
+	public CustomTypeWriter writeFloat(float v)
+	{
+		beginElement();
+
+		out.append(v);
+
+		return this;
+	}
+
+	public CustomTypeWriter writeBoolean(boolean v)
+	{
+		beginElement();
+
+		out.append(v ? 't' : 'f');
+
+		return this;
+	}
+
+	/**
+	 * Writes a bytea in the hex format.
+	 */
+	public CustomTypeWriter writeBytes(byte[] v)
+	{
+		if(v == null)
+		{
+			return writeNull();
+		}
+
+		beginElement();
+
+		boolean q = level > 0;
+
+		if(q)
+		{
+			openQuote();
+		}
+
+		out.ensureCapacity(out.length() + v.length * 2 + 8);
+		out.append(backslashes[depth]).append('x');
+
+		PgBytea.appendHex(out, v, 0, v.length);
+
+		if(q)
+		{
+			closeQuote();
+		}
+
+		return this;
+	}
+
+	public CustomTypeWriter writeDate(long epochDay)
+	{
+		beginElement();
+
+		// BC dates have a space
+		boolean q = level > 0 && epochDay < -719162;
+
+		if(q)
+		{
+			openQuote();
+		}
+
+		PgDateTime.appendDate(out, epochDay);
+
+		if(q)
+		{
+			closeQuote();
+		}
+
+		return this;
+	}
+
+	/**
+	 * @param micros microseconds since 1970-01-01
+	 * @param utc the timestamp is a point in time, written with +00
+	 */
+	public CustomTypeWriter writeTimestamp(long micros, boolean utc)
+	{
+		beginElement();
+
+		boolean q = level > 0;
+
+		if(q)
+		{
+			openQuote();
+		}
+
+		PgDateTime.appendTimestamp(out, micros, utc);
+
+		if(q)
+		{
+			closeQuote();
+		}
+
+		return this;
+	}
+
+	public CustomTypeWriter writeValue(Object v, boolean noQuote)
+	{
+		if(v == null)
+		{
+			return writeNull();
+		}
+
+		if(v instanceof CustomType)
+		{
+			((CustomType) v).write(this);
+		}
+		else if(v instanceof CustomTypeArrayBuilder)
+		{
+			((CustomTypeArrayBuilder) v).write(this);
+		}
+		else if(v instanceof Object[])
+		{
+			beginArray();
+
+			for(Object o : (Object[]) v)
+			{
+				writeValue(o, noQuote);
+			}
+
+			endArray();
+		}
+		else if(v instanceof int[])
+		{
+			beginArray();
+
+			for(int i : (int[]) v)
+			{
+				writeLong(i);
+			}
+
+			endArray();
+		}
+		else if(v instanceof long[])
+		{
+			beginArray();
+
+			for(long l : (long[]) v)
+			{
+				writeLong(l);
+			}
+
+			endArray();
+		}
+		else if(v instanceof double[])
+		{
+			beginArray();
+
+			for(double d : (double[]) v)
+			{
+				writeDouble(d);
+			}
+
+			endArray();
+		}
+		else if(v instanceof byte[])
+		{
+			writeBytes((byte[]) v);
+		}
+		else if(v instanceof Instant)
+		{
+			writeTimestamp(PgDateTime.toEpochMicros((Instant) v), true);
+		}
+		else if(v instanceof OffsetDateTime)
+		{
+			writeTimestamp(PgDateTime.toEpochMicros(((OffsetDateTime) v).toInstant()), true);
+		}
+		else if(v instanceof LocalDateTime)
+		{
+			writeTimestamp(PgDateTime.toEpochMicros((LocalDateTime) v), false);
+		}
+		else if(v instanceof LocalDate)
+		{
+			writeDate(((LocalDate) v).toEpochDay());
+		}
+		else if(noQuote)
+		{
+			writeRaw(v.toString());
+		}
+		else
+		{
+			writeString(v.toString());
+		}
+
+		return this;
+	}
+
+	@Override
+	public String toString()
+	{
+		return out.toString();
+	}
+
+	protected void appendEscaped(CharSequence v)
+	{
+		String q = quotes[depth];
+		String b = backslashes[depth];
+
+		int start = 0;
+		int max = v.length();
+
+		for(int i = 0; i < max; i++)
+		{
+			char c = v.charAt(i);
+
+			if(c == '"' || c == '\\')
+			{
+				out.append(v, start, i);
+				out.append(c == '"' ? q : b);
+
+				start = i + 1;
+			}
+			else if(copy && c < ' ' && (c == '\n' || c == '\r' || c == '\t'))
+			{
+				out.append(v, start, i);
+				out.append('\\').append(c == '\n' ? 'n' : c == '\r' ? 'r' : 't');
+
+				start = i + 1;
+			}
+		}
+
+		out.append(v, start, max);
+	}
+
+	protected void beginElement()
+	{
+		if(level > 0 && counts[level - 1]++ > 0)
+		{
+			out.append(',');
+		}
+	}
+
+	protected void openQuote()
+	{
+		out.append(quotes[depth]);
+
+		Type layer = containers[level - 1];
+
+		if(valid <= depth || layers[depth] != layer)
+		{
+			if(depth + 1 == quotes.length)
+			{
+				quotes = Arrays.copyOf(quotes, quotes.length * 2);
+				backslashes = Arrays.copyOf(backslashes, backslashes.length * 2);
+				layers = Arrays.copyOf(layers, layers.length * 2);
+			}
+
+			String q = quotes[depth];
+			String b = backslashes[depth];
+
+			layers[depth] = layer;
+
+			// types escape " as "", arrays as \"
+			quotes[depth + 1] = layer == Type.TYPE ? q + q : b + q;
+			backslashes[depth + 1] = b + b;
+
+			valid = depth + 1;
+		}
+
+		depth++;
+	}
+
+	protected void closeQuote()
+	{
+		depth--;
+
+		out.append(quotes[depth]);
+	}
+
+	protected void push(Type container, boolean q)
+	{
+		if(level == containers.length)
+		{
+			containers = Arrays.copyOf(containers, level * 2);
+			quoted = Arrays.copyOf(quoted, level * 2);
+			counts = Arrays.copyOf(counts, level * 2);
+		}
+
+		containers[level] = container;
+		quoted[level] = q;
+		counts[level] = 0;
+
+		level++;
+	}
+
+	protected void pop(Type container)
+	{
+		if(level == 0 || containers[level - 1] != container)
+		{
+			throw new IllegalStateException("Not in "+container);
+		}
+
+		level--;
+	}
+}
@@ -0,0 +1,287 @@
+package org.ketsu.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Parses the literal in place, levels are indexed when they are first
+ * accessed. Values are not thread-safe, see {@link TapeUDTValue}.
+ */
+public class NoCopyUDTValue extends UDTValue
+{
+	protected final UDTScanner scanner;
+	protected final int start;
+	protected final int end;
+	protected final int depth;
+	protected final long layers;
+
+	protected String string;
+
+	/*
+	 * start, end and kind of every element found by parse(), the elements
+	 * themselves are created only when accessed
+	 */
+	protected int[] index;
+	protected int size;
+	protected UDTValue[] children;
+
+	public NoCopyUDTValue(String source)
+	{
+		this(new UDTScanner(source));
+	}
+
+	public NoCopyUDTValue(UDTScanner scanner)
+	{
+		this(scanner, scanner.getStart(), scanner.getEnd(), 0, 0L);
+	}
+
+	protected NoCopyUDTValue(UDTScanner scanner, int start, int end, int depth, long layers)
+	{
+		this.scanner = scanner;
+		this.start = start;
+		this.end = end;
+		this.depth = depth;
+		this.layers = layers;
+	}
+
+	@Override
+	protected void parse()
+	{
+		if(parsed)
+		{
+			throw new IllegalStateException("Already parsed!");
+		}
+
+		parsed = true;
+
+		type = scanner.typeOf(start, end);
+
+		if(type != Type.NORMAL)
+		{
+			index = new int[12];
+
+			scanner.scan(start, end, depth, layers, type, this::addIndex);
+		}
+	}
+
+	protected void addIndex(int s, int e, int kind)
+	{
+		int i = size * 3;
+
+		if(i == index.length)
+		{
+			index = Arrays.copyOf(index, i * 2);
+		}
+
+		index[i] = s;
+		index[i + 1] = e;
+		index[i + 2] = kind;
+
+		size++;
+	}
+
+	@Override
+	public int getSize()
+	{
+		checkParsed();
+
+		return size;
+	}
+
+	@Override
+	public UDTValue getValue(int which)
+	{
+		if(getSize() < which)
+		{
+			return null;
+		}
+
+		if(children == null)
+		{
+			children = new UDTValue[size];
+		}
+
+		UDTValue ret = children[which - 1];
+
+		if(ret == null)
+		{
+			ret = children[which - 1] = createChild(which - 1);
+		}
+
+		return ret;
+	}
+
+	@Override
+	public List<UDTValue> getValues()
+	{
+		checkParsed();
+
+		if(values == null && index != null)
+		{
+			values = new ArrayList<UDTValue>(size);
+
+			for(int i = 1; i <= size; i++)
+			{
+				values.add(getValue(i));
+			}
+		}
+
+		return values;
+	}
+
+	@Override
+	protected UDTValue valueAt(int n)
+	{
+		// not cached, so parallel streams do not race on the children
+		return createChild(n);
+	}
+
+	protected UDTValue createChild(int n)
+	{
+		int kind = index[n * 3 + 2];
+
+		if(kind == UDTScanner.NULL_ELEMENT)
+		{
+			return UDTValue.NULL;
+		}
+
+		return new NoCopyUDTValue(scanner, index[n * 3], index[n * 3 + 1], elementDepth(kind), elementLayers(kind));
+	}
+
+	@Override
+	protected int intAt(int n)
+	{
+		int kind = index[n * 3 + 2];
+
+		if(kind == UDTScanner.NULL_ELEMENT)
+		{
+			return 0;
+		}
+
+		return scanner.parseInt(index[n * 3], index[n * 3 + 1], elementDepth(kind), elementLayers(kind));
+	}
+
+	@Override
+	protected long longAt(int n)
+	{
+		int kind = index[n * 3 + 2];
+
+		if(kind == UDTScanner.NULL_ELEMENT)
+		{
+			return 0;
+		}
+
+		return scanner.parseLong(index[n * 3], index[n * 3 + 1], elementDepth(kind), elementLayers(kind));
+	}
+
+	@Override
+	protected double doubleAt(int n)
+	{
+		int kind = index[n * 3 + 2];
+
+		if(kind == UDTScanner.NULL_ELEMENT)
+		{
+			return 0;
+		}
+
+		return scanner.parseDouble(index[n * 3], index[n * 3 + 1], elementDepth(kind), elementLayers(kind));
+	}
+
+	@Override
+	protected boolean booleanAt(int n)
+	{
+		return index[n * 3 + 2] != UDTScanner.NULL_ELEMENT && scanner.parseBoolean(index[n * 3], index[n * 3 + 1]);
+	}
+
+	@Override
+	protected boolean isNullAt(int n)
+	{
+		return index[n * 3 + 2] == UDTScanner.NULL_ELEMENT;
+	}
+
+	protected int elementDepth(int kind)
+	{
+		return kind == UDTScanner.QUOTED_ELEMENT ? depth + 1 : depth;
+	}
+
+	protected long elementLayers(int kind)
+	{
+		return kind == UDTScanner.QUOTED_ELEMENT ? UDTScanner.quotedLayers(layers, depth, type) : layers;
+	}
+
+	@Override
+	public boolean isNull()
+	{
+		return false;
+	}
+
+	@Override
+	public int toInt()
+	{
+		return scanner.parseInt(start, end, depth, layers);
+	}
+
+	@Override
+	public long toLong()
+	{
+		return scanner.parseLong(start, end, depth, layers);
+	}
+
+	@Override
+	public double toDouble()
+	{
+		return scanner.parseDouble(start, end, depth, layers);
+	}
+
+	@Override
+	public boolean toBoolean()
+	{
+		return scanner.parseBoolean(start, end);
+	}
+
+	@Override
+	public CharSequence toCharSequence()
+	{
+		if(string != null)
+		{
+			return string;
+		}
+
+		return scanner.sequence(start, end, depth, layers);
+	}
+
+	@Override
+	public String toString()
+	{
+		if(string == null)
+		{
+			string = scanner.decode(start, end, depth, layers);
+		}
+
+		return string;
+	}
+}
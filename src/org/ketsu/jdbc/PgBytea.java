@@ -0,0 +1,153 @@
+package org.ketsu.jdbc;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Converts bytea values from and to their text format, the hex format
+ * <code>\x0a1b</code> or the escape format <code>a\001\\</code> of older
+ * servers.
+ */
+public class PgBytea
+{
+	protected static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	// value of every hex digit, -1 for other characters
+	protected static final byte[] HEX_VALUES = new byte[128];
+
+	static
+	{
+		java.util.Arrays.fill(HEX_VALUES, (byte) -1);
+
+		for(int i = 0; i < 16; i++)
+		{
+			HEX_VALUES[HEX[i]] = (byte) i;
+			HEX_VALUES[Character.toUpperCase(HEX[i])] = (byte) i;
+		}
+	}
+
+	public static byte[] decode(CharSequence v)
+	{
+		return decode(v, 0, v.length());
+	}
+
+	public static byte[] decode(CharSequence v, int start, int end)
+	{
+		if(end - start >= 2 && v.charAt(start) == '\\' && v.charAt(start + 1) == 'x')
+		{
+			return decodeHex(v, start + 2, end);
+		}
+
+		return decodeEscape(v, start, end);
+	}
+
+	/**
+	 * Decodes the digits after \x, a trailing odd digit is ignored.
+	 */
+	protected static byte[] decodeHex(CharSequence v, int start, int end)
+	{
+		byte[] ret = new byte[(end - start) / 2];
+
+		for(int i = 0, p = start; i < ret.length; i++, p += 2)
+		{
+			int high = hexValue(v.charAt(p));
+			int low = hexValue(v.charAt(p + 1));
+
+			ret[i] = (byte) (high << 4 | low);
+		}
+
+		return ret;
+	}
+
+	protected static byte[] decodeEscape(CharSequence v, int start, int end)
+	{
+		int size = 0;
+
+		for(int i = start; i < end; i++, size++)
+		{
+			if(v.charAt(i) == '\\')
+			{
+				i += i + 1 < end && v.charAt(i + 1) == '\\' ? 1 : 3;
+			}
+		}
+
+		byte[] ret = new byte[size];
+
+		for(int i = start, n = 0; n < size; n++)
+		{
+			char c = v.charAt(i++);
+
+			if(c != '\\')
+			{
+				ret[n] = (byte) c;
+			}
+			else if(v.charAt(i) == '\\')
+			{
+				ret[n] = '\\';
+				i++;
+			}
+			else
+			{
+				ret[n] = (byte) (octalValue(v.charAt(i)) << 6 | octalValue(v.charAt(i + 1)) << 3 | octalValue(v.charAt(i + 2)));
+				i += 3;
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Appends the hex digits without the \x prefix, whose backslash has to be
+	 * escaped for its nesting depth.
+	 */
+	public static void appendHex(StringBuilder b, byte[] v, int start, int end)
+	{
+		for(int i = start; i < end; i++)
+		{
+			b.append(HEX[(v[i] >> 4) & 0xf]);
+			b.append(HEX[v[i] & 0xf]);
+		}
+	}
+
+	protected static int hexValue(char c)
+	{
+		int ret = c < 128 ? HEX_VALUES[c] : -1;
+
+		if(ret < 0)
+		{
+			throw new IllegalArgumentException("Unknown format: "+c);
+		}
+
+		return ret;
+	}
+
+	protected static int octalValue(char c)
+	{
+		if(c < '0' || c > '7')
+		{
+			throw new IllegalArgumentException("Unknown format: "+c);
+		}
+
+		return c - '0';
+	}
+}
@@ -0,0 +1,728 @@
+package org.ketsu.jdbc;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.Period;
+import java.time.ZoneOffset;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Parses the ISO text output of date, time, timetz, timestamp and timestamptz
+ * straight from the characters, e.g
+ *
+ * <pre>
+ * 2024-02-29
+ * 13:14:15.123456+02
+ * 2024-02-29 13:14:15.123456
+ * 2024-02-29 13:14:15.123456+05:30
+ * 0044-03-15 12:00:00 BC
+ * </pre>
+ *
+ * Timestamps without an offset are taken as UTC, infinity and -infinity are
+ * Long.MAX_VALUE and Long.MIN_VALUE like in the binary format.
+ */
+public class PgDateTime
+{
+	public static final long MICROS_PER_SECOND = 1000000L;
+	public static final long MICROS_PER_DAY = 86400L * MICROS_PER_SECOND;
+
+	public static LocalDate parseDate(CharSequence s)
+	{
+		long micros = parseLocalMicros(s, 0, s.length());
+
+		if(micros == Long.MAX_VALUE || micros == Long.MIN_VALUE)
+		{
+			return micros > 0 ? LocalDate.MAX : LocalDate.MIN;
+		}
+
+		return LocalDate.ofEpochDay(Math.floorDiv(micros, MICROS_PER_DAY));
+	}
+
+	/**
+	 * Parses a time, the offset of a timetz is ignored.
+	 */
+	public static LocalTime parseTime(CharSequence s)
+	{
+		int end = s.length();
+		long micros = parseMicrosOfDay(s, 0, offsetStart(s, 0, end));
+
+		// 24:00:00 is valid
+		return micros == MICROS_PER_DAY ? LocalTime.MAX : LocalTime.ofNanoOfDay(micros * 1000);
+	}
+
+	public static LocalDateTime parseLocalDateTime(CharSequence s)
+	{
+		return toLocalDateTime(parseLocalMicros(s, 0, s.length()));
+	}
+
+	public static OffsetDateTime parseOffsetDateTime(CharSequence s)
+	{
+		long micros = parseLocalMicros(s, 0, s.length());
+
+		if(micros == Long.MAX_VALUE || micros == Long.MIN_VALUE)
+		{
+			return micros > 0 ? OffsetDateTime.MAX : OffsetDateTime.MIN;
+		}
+
+		return OffsetDateTime.of(toLocalDateTime(micros), ZoneOffset.ofTotalSeconds(parseOffsetSeconds(s, 0, s.length())));
+	}
+
+	public static Instant parseInstant(CharSequence s)
+	{
+		return toInstant(parseEpochMicros(s, 0, s.length()));
+	}
+
+	public static LocalDateTime toLocalDateTime(long micros)
+	{
+		if(micros == Long.MAX_VALUE || micros == Long.MIN_VALUE)
+		{
+			return micros > 0 ? LocalDateTime.MAX : LocalDateTime.MIN;
+		}
+
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND), (int) Math.floorMod(micros, MICROS_PER_SECOND) * 1000, ZoneOffset.UTC);
+	}
+
+	public static Instant toInstant(long micros)
+	{
+		if(micros == Long.MAX_VALUE || micros == Long.MIN_VALUE)
+		{
+			return micros > 0 ? Instant.MAX : Instant.MIN;
+		}
+
+		return Instant.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND), Math.floorMod(micros, MICROS_PER_SECOND) * 1000);
+	}
+
+	/**
+	 * @return microseconds since 1970-01-01 UTC
+	 */
+	public static long parseEpochMicros(CharSequence s, int start, int end)
+	{
+		long micros = parseLocalMicros(s, start, end);
+
+		if(micros == Long.MAX_VALUE || micros == Long.MIN_VALUE)
+		{
+			return micros;
+		}
+
+		return micros - parseOffsetSeconds(s, start, end) * MICROS_PER_SECOND;
+	}
+
+	/**
+	 * @return the date and time without the offset as microseconds since 1970-01-01
+	 */
+	public static long parseLocalMicros(CharSequence s, int start, int end)
+	{
+		if(is(s, start, end, "infinity"))
+		{
+			return Long.MAX_VALUE;
+		}
+
+		if(is(s, start, end, "-infinity"))
+		{
+			return Long.MIN_VALUE;
+		}
+
+		boolean bc = isBC(s, start, end);
+
+		if(bc)
+		{
+			end -= 3;
+		}
+
+		// the year has at least 4 digits
+		int y = start + 4;
+
+		while(y < end && s.charAt(y) != '-')
+		{
+			y++;
+		}
+
+		if(y + 6 > end || s.charAt(y + 3) != '-')
+		{
+			throw new IllegalArgumentException("Invalid date: "+s.subSequence(start, end));
+		}
+
+		int year = digits(s, start, y);
+		int month = digits(s, y + 1, y + 3);
+		int day = digits(s, y + 4, y + 6);
+
+		if(month < 1 || month > 12 || day < 1 || day > 31)
+		{
+			throw new IllegalArgumentException("Invalid date: "+s.subSequence(start, end));
+		}
+
+		long micros = epochDay(bc ? 1 - year : year, month, day) * MICROS_PER_DAY;
+
+		int t = y + 6;
+
+		if(t < end && (s.charAt(t) == ' ' || s.charAt(t) == 'T'))
+		{
+			micros += parseMicrosOfDay(s, t + 1, offsetStart(s, t + 1, end));
+		}
+		else if(t != end)
+		{
+			throw new IllegalArgumentException("Invalid date: "+s.subSequence(start, end));
+		}
+
+		return micros;
+	}
+
+	/**
+	 * Parses HH:MM[:SS[.ffffff]], digits after microseconds are truncated.
+	 */
+	public static long parseMicrosOfDay(CharSequence s, int start, int end)
+	{
+		if(end - start < 5 || s.charAt(start + 2) != ':')
+		{
+			throw new IllegalArgumentException("Invalid time: "+s.subSequence(start, end));
+		}
+
+		long micros = (digits(s, start, start + 2) * 3600L + digits(s, start + 3, start + 5) * 60L) * MICROS_PER_SECOND;
+
+		int i = start + 5;
+
+		if(i < end)
+		{
+			if(i + 3 > end || s.charAt(i) != ':')
+			{
+				throw new IllegalArgumentException("Invalid time: "+s.subSequence(start, end));
+			}
+
+			micros += digits(s, i + 1, i + 3) * MICROS_PER_SECOND;
+
+			i += 3;
+		}
+
+		if(i < end)
+		{
+			if(s.charAt(i) != '.' || i + 1 == end)
+			{
+				throw new IllegalArgumentException("Invalid time: "+s.subSequence(start, end));
+			}
+
+			int fraction = digits(s, i + 1, Math.min(end, i + 7));
+
+			for(int n = Math.min(end, i + 7) - i - 1; n < 6; n++)
+			{
+				fraction *= 10;
+			}
+
+			digits(s, Math.min(end, i + 7), end);
+
+			micros += fraction;
+		}
+
+		if(micros > MICROS_PER_DAY)
+		{
+			throw new IllegalArgumentException("Invalid time: "+s.subSequence(start, end));
+		}
+
+		return micros;
+	}
+
+	/**
+	 * @return the offset of a timestamptz or a timetz in seconds east of UTC, 0 if there is none
+	 */
+	public static int parseOffsetSeconds(CharSequence s, int start, int end)
+	{
+		if(isBC(s, start, end))
+		{
+			end -= 3;
+		}
+
+		int t = start;
+
+		// skip the date of a timestamp
+		while(t < end && s.charAt(t) != ' ' && s.charAt(t) != 'T' && s.charAt(t) != ':')
+		{
+			t++;
+		}
+
+		if(t < end && s.charAt(t) == ':')
+		{
+			t = start;
+		}
+
+		int o = offsetStart(s, t, end);
+
+		if(o == end || s.charAt(o) == 'Z')
+		{
+			return 0;
+		}
+
+		int sign = s.charAt(o) == '-' ? -1 : 1;
+		int ret = 0;
+		int unit = 3600;
+
+		// +HH[[:]MM[[:]SS]]
+		for(int i = o + 1; i < end && unit > 0; unit /= 60)
+		{
+			if(i + 2 > end)
+			{
+				throw new IllegalArgumentException("Invalid offset: "+s.subSequence(o, end));
+			}
+
+			ret += digits(s, i, i + 2) * unit;
+
+			i += 2;
+
+			if(i < end && s.charAt(i) == ':')
+			{
+				i++;
+			}
+		}
+
+		return sign * ret;
+	}
+
+	/**
+	 * Parses an interval in the postgres style of interval_out, e.g
+	 * 1 year 2 mons -3 days +04:05:06.789, or in the ISO 8601 format, e.g
+	 * P1Y2M3DT4H5M6.789S.
+	 *
+	 * @return microseconds, days and months like in the binary format
+	 */
+	public static long[] parseInterval(CharSequence s)
+	{
+		String v = s.toString().trim();
+		long[] ret = new long[3];
+
+		if(v.startsWith("P") || v.startsWith("-P"))
+		{
+			boolean minus = v.charAt(0) == '-';
+			int t = v.indexOf('T');
+			String date = t < 0 ? v : v.substring(0, t);
+
+			if(date.length() > (minus ? 2 : 1))
+			{
+				Period p = Period.parse(date);
+
+				ret[1] = p.getDays();
+				ret[2] = p.toTotalMonths();
+			}
+
+			if(t >= 0)
+			{
+				ret[0] = toMicros(Duration.parse((minus ? "-PT" : "PT") + v.substring(t + 1)));
+			}
+
+			return ret;
+		}
+
+		String[] tokens = v.split("\\s+");
+
+		for(int i = 0; i < tokens.length; i++)
+		{
+			String token = tokens[i];
+
+			if(token.indexOf(':') >= 0)
+			{
+				ret[0] += parseIntervalTime(token);
+				continue;
+			}
+
+			if(i + 1 == tokens.length)
+			{
+				throw new IllegalArgumentException("Invalid interval: "+s);
+			}
+
+			String unit = tokens[++i];
+			BigDecimal n = new BigDecimal(token.startsWith("+") ? token.substring(1) : token);
+
+			if(unit.startsWith("y"))
+			{
+				ret[2] += n.longValueExact() * 12;
+			}
+			else if(unit.startsWith("mon"))
+			{
+				ret[2] += n.longValueExact();
+			}
+			else if(unit.startsWith("w"))
+			{
+				ret[1] += n.longValueExact() * 7;
+			}
+			else if(unit.startsWith("d"))
+			{
+				ret[1] += n.longValueExact();
+			}
+			else if(unit.startsWith("h"))
+			{
+				ret[0] += n.multiply(BigDecimal.valueOf(3600 * MICROS_PER_SECOND)).longValue();
+			}
+			else if(unit.startsWith("m"))
+			{
+				ret[0] += n.multiply(BigDecimal.valueOf(60 * MICROS_PER_SECOND)).longValue();
+			}
+			else if(unit.startsWith("s"))
+			{
+				ret[0] += n.multiply(BigDecimal.valueOf(MICROS_PER_SECOND)).longValue();
+			}
+			else
+			{
+				throw new IllegalArgumentException("Invalid interval: "+s);
+			}
+		}
+
+		if(ret[1] != (int) ret[1] || ret[2] != (int) ret[2])
+		{
+			throw new IllegalArgumentException("Interval out of range: "+s);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Parses [+-]H:MM[:SS[.ffffff]] with any number of hours.
+	 */
+	protected static long parseIntervalTime(String s)
+	{
+		int start = s.startsWith("-") || s.startsWith("+") ? 1 : 0;
+		int colon = s.indexOf(':');
+		long micros = digits(s, start, colon) * 3600L * MICROS_PER_SECOND + parseMicrosOfDay("00" + s.substring(colon), 0, s.length() - colon + 2);
+
+		return s.startsWith("-") ? -micros : micros;
+	}
+
+	public static long toMicros(Duration v)
+	{
+		return v.getSeconds() * MICROS_PER_SECOND + v.getNano() / 1000;
+	}
+
+	public static long toEpochMicros(Instant v)
+	{
+		return v.getEpochSecond() * MICROS_PER_SECOND + v.getNano() / 1000;
+	}
+
+	/**
+	 * @return the date and time as microseconds since 1970-01-01 like it was UTC
+	 */
+	public static long toEpochMicros(LocalDateTime v)
+	{
+		return v.toEpochSecond(ZoneOffset.UTC) * MICROS_PER_SECOND + v.getNano() / 1000;
+	}
+
+	/**
+	 * Appends the date like PostgreSQL outputs it, e.g 2024-02-29 or 0044-03-15 BC.
+	 */
+	public static void appendDate(StringBuilder b, long epochDay)
+	{
+		boolean bc = appendDay(b, epochDay);
+
+		if(bc)
+		{
+			b.append(" BC");
+		}
+	}
+
+	/**
+	 * Appends the timestamp like PostgreSQL outputs it, with the fraction
+	 * only as long as needed.
+	 *
+	 * @param utc append +00, i.e the timestamp is a point in time and not a wall clock time
+	 */
+	public static void appendTimestamp(StringBuilder b, long micros, boolean utc)
+	{
+		if(micros == Long.MAX_VALUE || micros == Long.MIN_VALUE)
+		{
+			b.append(micros > 0 ? "infinity" : "-infinity");
+			return;
+		}
+
+		boolean bc = appendDay(b, Math.floorDiv(micros, MICROS_PER_DAY));
+
+		b.append(' ');
+
+		appendTime(b, Math.floorMod(micros, MICROS_PER_DAY));
+
+		if(utc)
+		{
+			b.append("+00");
+		}
+
+		if(bc)
+		{
+			b.append(" BC");
+		}
+	}
+
+	/**
+	 * Appends HH:MM:SS[.ffffff].
+	 */
+	public static void appendTime(StringBuilder b, long microsOfDay)
+	{
+		long seconds = microsOfDay / MICROS_PER_SECOND;
+
+		append(b, (int) (seconds / 3600), 2);
+		b.append(':');
+		append(b, (int) (seconds / 60 % 60), 2);
+		b.append(':');
+		append(b, (int) (seconds % 60), 2);
+
+		appendFraction(b, (int) (microsOfDay % MICROS_PER_SECOND));
+	}
+
+	/**
+	 * Appends .ffffff without the trailing zeros, nothing if it is 0.
+	 */
+	protected static void appendFraction(StringBuilder b, int fraction)
+	{
+		if(fraction != 0)
+		{
+			int digits = 6;
+
+			while(fraction % 10 == 0)
+			{
+				fraction /= 10;
+				digits--;
+			}
+
+			b.append('.');
+
+			append(b, fraction, digits);
+		}
+	}
+
+	/**
+	 * Appends the time and the offset like timetz_out, e.g 13:14:15.5+05:30.
+	 *
+	 * @param zone the offset in seconds west of UTC, as in the binary format
+	 */
+	public static void appendTimeTz(StringBuilder b, long microsOfDay, int zone)
+	{
+		appendTime(b, microsOfDay);
+
+		int seconds = Math.abs(zone);
+
+		b.append(zone <= 0 ? '+' : '-');
+		append(b, seconds / 3600, 2);
+
+		if(seconds % 3600 != 0)
+		{
+			b.append(':');
+			append(b, seconds / 60 % 60, 2);
+
+			if(seconds % 60 != 0)
+			{
+				b.append(':');
+				append(b, seconds % 60, 2);
+			}
+		}
+	}
+
+	/**
+	 * Appends the interval like interval_out with the default postgres
+	 * IntervalStyle, e.g 1 year 2 mons -3 days +04:05:06.789.
+	 */
+	public static void appendInterval(StringBuilder b, long micros, int days, int months)
+	{
+		int length = b.length();
+		boolean before = appendIntervalPart(b, months / 12, "year", length, false);
+		before = appendIntervalPart(b, months % 12, "mon", length, before);
+		before = appendIntervalPart(b, days, "day", length, before);
+
+		if(micros == 0 && b.length() > length)
+		{
+			return;
+		}
+
+		if(b.length() > length)
+		{
+			b.append(' ');
+		}
+
+		if(micros < 0)
+		{
+			b.append('-');
+		}
+		else if(before)
+		{
+			b.append('+');
+		}
+
+		// the hours are not limited to a day
+		long abs = Math.abs(micros);
+		long seconds = abs / MICROS_PER_SECOND;
+
+		append(b, seconds / 3600, 2);
+		b.append(':');
+		append(b, (int) (seconds / 60 % 60), 2);
+		b.append(':');
+		append(b, (int) (seconds % 60), 2);
+
+		appendFraction(b, (int) (abs % MICROS_PER_SECOND));
+	}
+
+	protected static boolean appendIntervalPart(StringBuilder b, int v, String unit, int length, boolean before)
+	{
+		if(v == 0)
+		{
+			return before;
+		}
+
+		if(b.length() > length)
+		{
+			b.append(' ');
+		}
+
+		if(before && v > 0)
+		{
+			b.append('+');
+		}
+
+		b.append(v);
+		b.append(' ');
+		b.append(unit);
+
+		if(v != 1)
+		{
+			b.append('s');
+		}
+
+		return v < 0;
+	}
+
+	/**
+	 * @return true if the date is BC
+	 */
+	protected static boolean appendDay(StringBuilder b, long epochDay)
+	{
+		// civil from days, see epochDay()
+		long z = epochDay + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153;
+
+		int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+		int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+		boolean bc = year <= 0;
+
+		append(b, bc ? 1 - year : year, 4);
+		b.append('-');
+		append(b, month, 2);
+		b.append('-');
+		append(b, day, 2);
+
+		return bc;
+	}
+
+	/**
+	 * Appends the number padded with zeros, without creating a string.
+	 */
+	protected static void append(StringBuilder b, long v, int width)
+	{
+		for(long limit = 10; width > 1; width--, limit *= 10)
+		{
+			if(v < limit)
+			{
+				b.append('0');
+			}
+		}
+
+		b.append(v);
+	}
+
+	/**
+	 * @return the position of the sign of the offset after a time, end if there is none
+	 */
+	protected static int offsetStart(CharSequence s, int start, int end)
+	{
+		for(int i = start; i < end; i++)
+		{
+			char c = s.charAt(i);
+
+			if(c == '+' || c == '-' || c == 'Z')
+			{
+				return i;
+			}
+		}
+
+		return end;
+	}
+
+	/**
+	 * @return days since 1970-01-01 in the proleptic Gregorian calendar
+	 */
+	protected static long epochDay(long year, int month, int day)
+	{
+		long y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y, 400);
+		long yoe = y - era * 400;
+		long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+		return era * 146097 + doe - 719468;
+	}
+
+	protected static int digits(CharSequence s, int start, int end)
+	{
+		int ret = 0;
+
+		for(int i = start; i < end; i++)
+		{
+			int digit = s.charAt(i) - '0';
+
+			if(digit < 0 || digit > 9)
+			{
+				throw new IllegalArgumentException("Invalid digit in "+s);
+			}
+
+			ret = ret * 10 + digit;
+		}
+
+		return ret;
+	}
+
+	protected static boolean isBC(CharSequence s, int start, int end)
+	{
+		return end - start > 3 && s.charAt(end - 1) == 'C' && s.charAt(end - 2) == 'B' && s.charAt(end - 3) == ' ';
+	}
+
+	protected static boolean is(CharSequence s, int start, int end, String v)
+	{
+		if(end - start != v.length())
+		{
+			return false;
+		}
+
+		for(int i = 0; i < v.length(); i++)
+		{
+			if(s.charAt(start + i) != v.charAt(i))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,213 @@
+package org.ketsu.jdbc;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Type OIDs of the built-in types used by the binary formats.
+ */
+public final class PgOid
+{
+	public static final int BOOL = 16;
+	public static final int BYTEA = 17;
+	public static final int CHAR = 18;
+	public static final int NAME = 19;
+	public static final int INT8 = 20;
+	public static final int INT2 = 21;
+	public static final int INT4 = 23;
+	public static final int TEXT = 25;
+	public static final int OID = 26;
+	public static final int JSON = 114;
+	public static final int XML = 142;
+	public static final int FLOAT4 = 700;
+	public static final int FLOAT8 = 701;
+	public static final int UNKNOWN = 705;
+	public static final int BPCHAR = 1042;
+	public static final int VARCHAR = 1043;
+	public static final int DATE = 1082;
+	public static final int TIME = 1083;
+	public static final int TIMESTAMP = 1114;
+	public static final int TIMESTAMPTZ = 1184;
+	public static final int INTERVAL = 1186;
+	public static final int TIMETZ = 1266;
+	public static final int NUMERIC = 1700;
+	public static final int RECORD = 2249;
+	public static final int UUID = 2950;
+	public static final int JSONB = 3802;
+
+	public static final int JSON_ARRAY = 199;
+	public static final int XML_ARRAY = 143;
+	public static final int BOOL_ARRAY = 1000;
+	public static final int BYTEA_ARRAY = 1001;
+	public static final int CHAR_ARRAY = 1002;
+	public static final int NAME_ARRAY = 1003;
+	public static final int INT2_ARRAY = 1005;
+	public static final int INT4_ARRAY = 1007;
+	public static final int TEXT_ARRAY = 1009;
+	public static final int BPCHAR_ARRAY = 1014;
+	public static final int VARCHAR_ARRAY = 1015;
+	public static final int INT8_ARRAY = 1016;
+	public static final int FLOAT4_ARRAY = 1021;
+	public static final int FLOAT8_ARRAY = 1022;
+	public static final int OID_ARRAY = 1028;
+	public static final int TIMESTAMP_ARRAY = 1115;
+	public static final int DATE_ARRAY = 1182;
+	public static final int TIME_ARRAY = 1183;
+	public static final int TIMESTAMPTZ_ARRAY = 1185;
+	public static final int INTERVAL_ARRAY = 1187;
+	public static final int NUMERIC_ARRAY = 1231;
+	public static final int TIMETZ_ARRAY = 1270;
+	public static final int RECORD_ARRAY = 2287;
+	public static final int UUID_ARRAY = 2951;
+	public static final int JSONB_ARRAY = 3807;
+
+	private PgOid()
+	{
+		//
+	}
+
+	/**
+	 * @return the element type of a built-in array type or 0
+	 */
+	public static int elementOf(int oid)
+	{
+		switch(oid)
+		{
+			case JSON_ARRAY: return JSON;
+			case XML_ARRAY: return XML;
+			case BOOL_ARRAY: return BOOL;
+			case BYTEA_ARRAY: return BYTEA;
+			case CHAR_ARRAY: return CHAR;
+			case NAME_ARRAY: return NAME;
+			case INT2_ARRAY: return INT2;
+			case INT4_ARRAY: return INT4;
+			case TEXT_ARRAY: return TEXT;
+			case BPCHAR_ARRAY: return BPCHAR;
+			case VARCHAR_ARRAY: return VARCHAR;
+			case INT8_ARRAY: return INT8;
+			case FLOAT4_ARRAY: return FLOAT4;
+			case FLOAT8_ARRAY: return FLOAT8;
+			case OID_ARRAY: return OID;
+			case TIMESTAMP_ARRAY: return TIMESTAMP;
+			case DATE_ARRAY: return DATE;
+			case TIME_ARRAY: return TIME;
+			case TIMESTAMPTZ_ARRAY: return TIMESTAMPTZ;
+			case INTERVAL_ARRAY: return INTERVAL;
+			case NUMERIC_ARRAY: return NUMERIC;
+			case TIMETZ_ARRAY: return TIMETZ;
+			case RECORD_ARRAY: return RECORD;
+			case UUID_ARRAY: return UUID;
+			case JSONB_ARRAY: return JSONB;
+			default: return 0;
+		}
+	}
+
+	/**
+	 * @return the array type of a built-in type or 0
+	 */
+	public static int arrayOf(int oid)
+	{
+		switch(oid)
+		{
+			case JSON: return JSON_ARRAY;
+			case XML: return XML_ARRAY;
+			case BOOL: return BOOL_ARRAY;
+			case BYTEA: return BYTEA_ARRAY;
+			case CHAR: return CHAR_ARRAY;
+			case NAME: return NAME_ARRAY;
+			case INT2: return INT2_ARRAY;
+			case INT4: return INT4_ARRAY;
+			case TEXT: return TEXT_ARRAY;
+			case BPCHAR: return BPCHAR_ARRAY;
+			case VARCHAR: return VARCHAR_ARRAY;
+			case INT8: return INT8_ARRAY;
+			case FLOAT4: return FLOAT4_ARRAY;
+			case FLOAT8: return FLOAT8_ARRAY;
+			case OID: return OID_ARRAY;
+			case TIMESTAMP: return TIMESTAMP_ARRAY;
+			case DATE: return DATE_ARRAY;
+			case TIME: return TIME_ARRAY;
+			case TIMESTAMPTZ: return TIMESTAMPTZ_ARRAY;
+			case INTERVAL: return INTERVAL_ARRAY;
+			case NUMERIC: return NUMERIC_ARRAY;
+			case TIMETZ: return TIMETZ_ARRAY;
+			case RECORD: return RECORD_ARRAY;
+			case UUID: return UUID_ARRAY;
+			case JSONB: return JSONB_ARRAY;
+			default: return 0;
+		}
+	}
+
+	/**
+	 * @return pg_type.typname of a built-in type or of an array of one, null
+	 * for other types
+	 */
+	public static String nameOf(int oid)
+	{
+		int element = elementOf(oid);
+
+		if(element != 0)
+		{
+			return "_" + nameOf(element);
+		}
+
+		switch(oid)
+		{
+			case BOOL: return "bool";
+			case BYTEA: return "bytea";
+			case CHAR: return "char";
+			case NAME: return "name";
+			case INT8: return "int8";
+			case INT2: return "int2";
+			case INT4: return "int4";
+			case TEXT: return "text";
+			case OID: return "oid";
+			case JSON: return "json";
+			case XML: return "xml";
+			case FLOAT4: return "float4";
+			case FLOAT8: return "float8";
+			case UNKNOWN: return "unknown";
+			case BPCHAR: return "bpchar";
+			case VARCHAR: return "varchar";
+			case DATE: return "date";
+			case TIME: return "time";
+			case TIMESTAMP: return "timestamp";
+			case TIMESTAMPTZ: return "timestamptz";
+			case INTERVAL: return "interval";
+			case TIMETZ: return "timetz";
+			case NUMERIC: return "numeric";
+			case RECORD: return "record";
+			case UUID: return "uuid";
+			case JSONB: return "jsonb";
+			default: return null;
+		}
+	}
+
+	/**
+	 * @return true for the built-in scalar types
+	 */
+	public static boolean isScalar(int oid)
+	{
+		return arrayOf(oid) != 0 && oid != RECORD;
+	}
+}
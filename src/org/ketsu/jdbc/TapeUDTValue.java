@@ -0,0 +1,179 @@
+package org.ketsu.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * A view of a single node of an {@link UDTTape}, creating one is cheap and
+ * all the parsed data stays in the tape. Views only have final fields and
+ * never change, so they are thread-safe like the tape.
+ */
+public class TapeUDTValue extends UDTValue
+{
+	protected final UDTTape tape;
+	protected final int node;
+
+	public TapeUDTValue(UDTTape tape, int node)
+	{
+		this.tape = tape;
+		this.node = node;
+	}
+
+	@Override
+	protected void parse()
+	{
+		//
+	}
+
+	@Override
+	protected void checkParsed()
+	{
+		// everything is in the tape
+	}
+
+	@Override
+	public Type getType()
+	{
+		return tape.getType(node);
+	}
+
+	@Override
+	public int getSize()
+	{
+		return tape.getSize(node);
+	}
+
+	@Override
+	public UDTValue getValue(int which)
+	{
+		if(getSize() < which)
+		{
+			return null;
+		}
+
+		return tape.getValue(tape.getElement(node, which - 1));
+	}
+
+	@Override
+	public List<UDTValue> getValues()
+	{
+		if(getType() == Type.NORMAL)
+		{
+			return null;
+		}
+
+		int size = getSize();
+
+		List<UDTValue> ret = new ArrayList<UDTValue>(size);
+
+		for(int i = 1; i <= size; i++)
+		{
+			ret.add(getValue(i));
+		}
+
+		return ret;
+	}
+
+	@Override
+	protected int intAt(int n)
+	{
+		int e = tape.getElement(node, n);
+
+		return tape.isNull(e) ? 0 : tape.toInt(e);
+	}
+
+	@Override
+	protected long longAt(int n)
+	{
+		int e = tape.getElement(node, n);
+
+		return tape.isNull(e) ? 0 : tape.toLong(e);
+	}
+
+	@Override
+	protected double doubleAt(int n)
+	{
+		int e = tape.getElement(node, n);
+
+		return tape.isNull(e) ? 0 : tape.toDouble(e);
+	}
+
+	@Override
+	protected boolean booleanAt(int n)
+	{
+		int e = tape.getElement(node, n);
+
+		return !tape.isNull(e) && tape.toBoolean(e);
+	}
+
+	@Override
+	protected boolean isNullAt(int n)
+	{
+		return tape.isNull(tape.getElement(node, n));
+	}
+
+	@Override
+	public boolean isNull()
+	{
+		return tape.isNull(node);
+	}
+
+	@Override
+	public int toInt()
+	{
+		return tape.toInt(node);
+	}
+
+	@Override
+	public long toLong()
+	{
+		return tape.toLong(node);
+	}
+
+	@Override
+	public double toDouble()
+	{
+		return tape.toDouble(node);
+	}
+
+	@Override
+	public boolean toBoolean()
+	{
+		return tape.toBoolean(node);
+	}
+
+	@Override
+	public CharSequence toCharSequence()
+	{
+		return tape.toCharSequence(node);
+	}
+
+	@Override
+	public String toString()
+	{
+		return tape.toString(node);
+	}
+}
@@ -0,0 +1,525 @@
+package org.ketsu.jdbc;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Decodes composite values into records or annotated classes:
+ *
+ * <pre>
+ * record User(int id, String name, List&lt;Address&gt; addresses) {}
+ *
+ * User user = UDTDecoder.of(User.class).decode(UDTValue.create(rset, "user"));
+ * </pre>
+ *
+ * Records are created with their canonical constructor and other classes with
+ * the constructor whose parameters all have {@link PgField}, or with the
+ * no-arg constructor after which the fields with {@link PgField} are set.
+ * Parameters and record components are mapped by their order unless they
+ * have a {@link PgField} position.
+ *
+ * The decoder is built once per class from method handles, so decoding needs
+ * no reflection and primitive fields are never boxed. Decoders are cached
+ * with a ClassValue and are thread-safe.
+ */
+public class UDTDecoder<T>
+{
+	protected static final ClassValue<UDTDecoder<?>> DECODERS = new ClassValue<UDTDecoder<?>>()
+	{
+		@Override
+		protected UDTDecoder<?> computeValue(Class<?> type)
+		{
+			return create(type);
+		}
+	};
+
+	// getters of UDTValue by the type they return
+	protected static final Map<Class<?>, String> GETTERS = new HashMap<Class<?>, String>();
+	protected static final Map<Class<?>, String> COLLECTION_GETTERS = new HashMap<Class<?>, String>();
+
+	static
+	{
+		GETTERS.put(int.class, "getInt");
+		GETTERS.put(long.class, "getLong");
+		GETTERS.put(double.class, "getDouble");
+		GETTERS.put(boolean.class, "getBoolean");
+		GETTERS.put(String.class, "getString");
+		GETTERS.put(LocalDate.class, "getDate");
+		GETTERS.put(LocalTime.class, "getTime");
+		GETTERS.put(Date.class, "getTimestamp");
+		GETTERS.put(LocalDateTime.class, "getLocalDateTime");
+		GETTERS.put(OffsetDateTime.class, "getOffsetDateTime");
+		GETTERS.put(Instant.class, "getInstant");
+		GETTERS.put(byte[].class, "getBytes");
+		GETTERS.put(BigInteger.class, "getBigInteger");
+		GETTERS.put(BigDecimal.class, "getBigDecimal");
+		GETTERS.put(int[].class, "getIntArray");
+		GETTERS.put(long[].class, "getLongArray");
+		GETTERS.put(double[].class, "getDoubleArray");
+		GETTERS.put(UDTValue.class, "getValue");
+
+		COLLECTION_GETTERS.put(String.class, "getStringCollection");
+		COLLECTION_GETTERS.put(LocalDate.class, "getDateCollection");
+		COLLECTION_GETTERS.put(LocalTime.class, "getTimeCollection");
+		COLLECTION_GETTERS.put(Date.class, "getTimestampCollection");
+		COLLECTION_GETTERS.put(Instant.class, "getInstantCollection");
+		COLLECTION_GETTERS.put(byte[].class, "getBytesCollection");
+	}
+
+	protected static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	protected final Class<T> type;
+	// (UDTValue)Object
+	protected final MethodHandle decoder;
+
+	@SuppressWarnings("unchecked")
+	public static <T> UDTDecoder<T> of(Class<T> type)
+	{
+		return (UDTDecoder<T>) DECODERS.get(type);
+	}
+
+	protected static <T> UDTDecoder<T> create(Class<T> type)
+	{
+		return new UDTDecoder<T>(type);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the class cannot be decoded
+	 */
+	protected UDTDecoder(Class<T> type)
+	{
+		this.type = type;
+
+		try
+		{
+			decoder = handle(type).asType(MethodType.methodType(Object.class, UDTValue.class));
+		}
+		catch(ReflectiveOperationException e)
+		{
+			throw new IllegalArgumentException("Cannot decode "+type.getName(), e);
+		}
+	}
+
+	public Class<T> getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return null for NULL
+	 */
+	@SuppressWarnings("unchecked")
+	public T decode(UDTValue value)
+	{
+		if(value == null || value.isNull())
+		{
+			return null;
+		}
+
+		try
+		{
+			return (T) decoder.invokeExact(value);
+		}
+		catch(RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch(Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Decodes the elements of an array, NULL elements are null.
+	 */
+	public List<T> decodeAll(UDTValue array)
+	{
+		if(array == null || array.isNull())
+		{
+			return null;
+		}
+
+		List<T> ret = new ArrayList<T>(array.getSize());
+
+		for(UDTValue v : array)
+		{
+			ret.add(decode(v));
+		}
+
+		return ret;
+	}
+
+	/**
+	 * @return (UDTValue)type
+	 */
+	protected static MethodHandle handle(Class<?> type) throws ReflectiveOperationException
+	{
+		Constructor<?> constructor = recordConstructor(type);
+
+		if(constructor == null)
+		{
+			constructor = annotatedConstructor(type);
+		}
+
+		if(constructor != null)
+		{
+			constructor.setAccessible(true);
+
+			MethodHandle ret = LOOKUP.unreflectConstructor(constructor);
+			Type[] types = constructor.getGenericParameterTypes();
+			Annotation[][] annotations = constructor.getParameterAnnotations();
+
+			for(int i = 0; i < types.length; i++)
+			{
+				ret = MethodHandles.filterArguments(ret, i, getter(types[i], position(annotations[i], i + 1)));
+			}
+
+			// every getter reads the same value
+			return MethodHandles.permuteArguments(ret, MethodType.methodType(type, UDTValue.class), new int[types.length]);
+		}
+
+		constructor = type.getDeclaredConstructor();
+		constructor.setAccessible(true);
+
+		MethodHandle ret = MethodHandles.dropArguments(LOOKUP.unreflectConstructor(constructor), 0, UDTValue.class);
+		MethodHandle identity = MethodHandles.dropArguments(MethodHandles.identity(type), 1, UDTValue.class);
+
+		for(Field f : type.getDeclaredFields())
+		{
+			PgField field = f.getAnnotation(PgField.class);
+
+			if(field == null)
+			{
+				continue;
+			}
+
+			if(field.value() < 1)
+			{
+				throw new IllegalArgumentException("No position in @PgField of "+f);
+			}
+
+			f.setAccessible(true);
+
+			// (object, value) -> object after setting the field
+			MethodHandle setter = MethodHandles.filterArguments(LOOKUP.unreflectSetter(f), 1, getter(f.getGenericType(), field.value()));
+			MethodHandle set = MethodHandles.foldArguments(identity, setter);
+
+			ret = MethodHandles.foldArguments(set, ret);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * @return the canonical constructor of a record, null for other classes
+	 */
+	protected static Constructor<?> recordConstructor(Class<?> type) throws ReflectiveOperationException
+	{
+		// looked up dynamically to keep working on runtimes without records
+		if(type.getSuperclass() == null || !type.getSuperclass().getName().equals("java.lang.Record"))
+		{
+			return null;
+		}
+
+		Object[] components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+		Class<?>[] types = new Class<?>[components.length];
+
+		for(int i = 0; i < components.length; i++)
+		{
+			types[i] = (Class<?>) components[i].getClass().getMethod("getType").invoke(components[i]);
+		}
+
+		return type.getDeclaredConstructor(types);
+	}
+
+	/**
+	 * @return the constructor whose parameters all have {@link PgField}, null if there is none
+	 */
+	protected static Constructor<?> annotatedConstructor(Class<?> type)
+	{
+		for(Constructor<?> c : type.getDeclaredConstructors())
+		{
+			Annotation[][] annotations = c.getParameterAnnotations();
+
+			if(annotations.length == 0)
+			{
+				continue;
+			}
+
+			boolean all = true;
+
+			for(Annotation[] a : annotations)
+			{
+				all &= find(a) != null;
+			}
+
+			if(all)
+			{
+				return c;
+			}
+		}
+
+		return null;
+	}
+
+	protected static PgField find(Annotation[] annotations)
+	{
+		for(Annotation a : annotations)
+		{
+			if(a instanceof PgField)
+			{
+				return (PgField) a;
+			}
+		}
+
+		return null;
+	}
+
+	protected static int position(Annotation[] annotations, int position)
+	{
+		PgField field = find(annotations);
+
+		return field == null || field.value() < 1 ? position : field.value();
+	}
+
+	/**
+	 * @return (UDTValue)type reading the field at the given position
+	 */
+	protected static MethodHandle getter(Type type, int which) throws ReflectiveOperationException
+	{
+		return MethodHandles.insertArguments(reader(type), 1, which);
+	}
+
+	/**
+	 * @return (UDTValue, int)type reading a field
+	 * @throws IllegalArgumentException if the type is not supported
+	 */
+	protected static MethodHandle reader(Type type) throws ReflectiveOperationException
+	{
+		Class<?> c = rawType(type);
+		String name = GETTERS.get(c);
+		MethodHandle ret;
+
+		if(name != null)
+		{
+			ret = LOOKUP.findVirtual(UDTValue.class, name, MethodType.methodType(c, int.class));
+		}
+		else if(c == short.class || c == byte.class || c == float.class)
+		{
+			ret = LOOKUP.findVirtual(UDTValue.class, c == float.class ? "getDouble" : "getInt", MethodType.methodType(c == float.class ? double.class : int.class, int.class));
+			ret = MethodHandles.explicitCastArguments(ret, MethodType.methodType(c, UDTValue.class, int.class));
+		}
+		else if(c == char.class)
+		{
+			ret = LOOKUP.findStatic(UDTDecoder.class, "getChar", MethodType.methodType(char.class, UDTValue.class, int.class));
+		}
+		else if(c == Integer.class || c == Long.class || c == Short.class || c == Byte.class || c == Double.class || c == Float.class || c == Boolean.class || c == Character.class)
+		{
+			ret = LOOKUP.findStatic(UDTDecoder.class, "get" + c.getSimpleName(), MethodType.methodType(c, UDTValue.class, int.class));
+		}
+		else if(c == List.class)
+		{
+			Type argument = type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments()[0] : Object.class;
+			Class<?> element = rawType(argument);
+			String collection = COLLECTION_GETTERS.get(element);
+
+			if(collection != null)
+			{
+				ret = LOOKUP.findVirtual(UDTValue.class, collection, MethodType.methodType(List.class, int.class));
+			}
+			else if(isDecoded(element))
+			{
+				ret = MethodHandles.insertArguments(LOOKUP.findStatic(UDTDecoder.class, "getList", MethodType.methodType(List.class, Class.class, UDTValue.class, int.class)), 0, element);
+			}
+			else
+			{
+				// the elements are read from the array like fields
+				MethodHandle elements = reader(argument).asType(MethodType.methodType(Object.class, UDTValue.class, int.class));
+
+				ret = MethodHandles.insertArguments(LOOKUP.findStatic(UDTDecoder.class, "getList", MethodType.methodType(List.class, MethodHandle.class, UDTValue.class, int.class)), 0, elements);
+			}
+		}
+		else if(c.isEnum())
+		{
+			ret = MethodHandles.insertArguments(LOOKUP.findStatic(UDTDecoder.class, "getEnum", MethodType.methodType(Enum.class, Class.class, UDTValue.class, int.class)), 0, c);
+		}
+		else if(isDecoded(c))
+		{
+			// nested decoders are looked up when decoding, so types can refer to themselves
+			ret = MethodHandles.insertArguments(LOOKUP.findStatic(UDTDecoder.class, "getObject", MethodType.methodType(Object.class, Class.class, UDTValue.class, int.class)), 0, c);
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unsupported type "+type.getTypeName());
+		}
+
+		return ret.asType(MethodType.methodType(c, UDTValue.class, int.class));
+	}
+
+	/**
+	 * @return true for records and classes with {@link PgField} fields or constructor parameters
+	 */
+	protected static boolean isDecoded(Class<?> type)
+	{
+		return UDTEncoder.isEncoded(type) || annotatedConstructor(type) != null;
+	}
+
+	protected static Class<?> rawType(Type type)
+	{
+		if(type instanceof Class)
+		{
+			return (Class<?>) type;
+		}
+
+		if(type instanceof ParameterizedType)
+		{
+			return (Class<?>) ((ParameterizedType) type).getRawType();
+		}
+
+		throw new IllegalArgumentException("Unsupported type "+type);
+	}
+
+	protected static Integer getInteger(UDTValue v, int which)
+	{
+		return v.isNull(which) ? null : v.getInt(which);
+	}
+
+	protected static Long getLong(UDTValue v, int which)
+	{
+		return v.isNull(which) ? null : v.getLong(which);
+	}
+
+	protected static Double getDouble(UDTValue v, int which)
+	{
+		return v.isNull(which) ? null : v.getDouble(which);
+	}
+
+	protected static Short getShort(UDTValue v, int which)
+	{
+		return v.isNull(which) ? null : (short) v.getInt(which);
+	}
+
+	protected static Byte getByte(UDTValue v, int which)
+	{
+		return v.isNull(which) ? null : (byte) v.getInt(which);
+	}
+
+	protected static Float getFloat(UDTValue v, int which)
+	{
+		return v.isNull(which) ? null : (float) v.getDouble(which);
+	}
+
+	protected static Boolean getBoolean(UDTValue v, int which)
+	{
+		return v.isNull(which) ? null : v.getBoolean(which);
+	}
+
+	/**
+	 * @return the first character of the text, 0 for NULL and empty strings
+	 */
+	protected static char getChar(UDTValue v, int which)
+	{
+		String s = v.getString(which);
+
+		return s == null || s.isEmpty() ? 0 : s.charAt(0);
+	}
+
+	protected static Character getCharacter(UDTValue v, int which)
+	{
+		return v.isNull(which) ? null : getChar(v, which);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	protected static Enum<?> getEnum(Class type, UDTValue v, int which)
+	{
+		String s = v.getString(which);
+
+		return s == null ? null : Enum.valueOf(type, s);
+	}
+
+	protected static Object getObject(Class<?> type, UDTValue v, int which)
+	{
+		return of(type).decode(v.getValue(which));
+	}
+
+	protected static List<?> getList(Class<?> type, UDTValue v, int which)
+	{
+		return of(type).decodeAll(v.getValue(which));
+	}
+
+	/**
+	 * @param reader (UDTValue, int)Object reading an element of the array
+	 */
+	protected static List<?> getList(MethodHandle reader, UDTValue v, int which)
+	{
+		UDTValue array = v.getValue(which);
+
+		if(array == null || array.isNull())
+		{
+			return null;
+		}
+
+		int size = array.getSize();
+		List<Object> ret = new ArrayList<Object>(size);
+
+		try
+		{
+			for(int i = 1; i <= size; i++)
+			{
+				ret.add((Object) reader.invokeExact(array, i));
+			}
+		}
+		catch(RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch(Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		return ret;
+	}
+}
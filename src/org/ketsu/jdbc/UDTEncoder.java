@@ -0,0 +1,434 @@
+package org.ketsu.jdbc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.TreeMap;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Encodes records and annotated classes as composite type literals, the
+ * counterpart of {@link UDTDecoder}:
+ *
+ * <pre>
+ * java.sql.Array users = UDTEncoder.of(User.class).toArray("users_type", list);
+ * </pre>
+ *
+ * Record components are written in order unless they have a {@link PgField}
+ * position, other classes write their fields with {@link PgField}. Missing
+ * positions are NULL.
+ *
+ * The fields are written straight into the {@link CustomTypeWriter} by a
+ * single method handle built once per class, numbers and booleans without
+ * boxing, so no CustomType is created per element. Encoders are cached with a
+ * ClassValue and are thread-safe.
+ */
+public class UDTEncoder<T>
+{
+	protected static final ClassValue<UDTEncoder<?>> ENCODERS = new ClassValue<UDTEncoder<?>>()
+	{
+		@Override
+		protected UDTEncoder<?> computeValue(Class<?> type)
+		{
+			return create(type);
+		}
+	};
+
+	protected static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	protected final Class<T> type;
+	// (CustomTypeWriter, Object)void writing the fields
+	protected final MethodHandle encoder;
+
+	@SuppressWarnings("unchecked")
+	public static <T> UDTEncoder<T> of(Class<T> type)
+	{
+		return (UDTEncoder<T>) ENCODERS.get(type);
+	}
+
+	protected static <T> UDTEncoder<T> create(Class<T> type)
+	{
+		return new UDTEncoder<T>(type);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the class cannot be encoded
+	 */
+	protected UDTEncoder(Class<T> type)
+	{
+		this.type = type;
+
+		try
+		{
+			encoder = handle(type).asType(MethodType.methodType(void.class, CustomTypeWriter.class, Object.class));
+		}
+		catch(ReflectiveOperationException e)
+		{
+			throw new IllegalArgumentException("Cannot encode "+type.getName(), e);
+		}
+	}
+
+	public Class<T> getType()
+	{
+		return type;
+	}
+
+	public void write(CustomTypeWriter w, T value)
+	{
+		if(value == null)
+		{
+			w.writeNull();
+			return;
+		}
+
+		w.beginType();
+
+		try
+		{
+			encoder.invokeExact(w, (Object) value);
+		}
+		catch(RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch(Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		w.endType();
+	}
+
+	/**
+	 * Writes an array of the values, null elements are NULL.
+	 */
+	public void writeAll(CustomTypeWriter w, Collection<? extends T> values)
+	{
+		if(values == null)
+		{
+			w.writeNull();
+			return;
+		}
+
+		w.beginArray();
+
+		for(T v : values)
+		{
+			write(w, v);
+		}
+
+		w.endArray();
+	}
+
+	public String toString(T value)
+	{
+		CustomTypeWriter w = new CustomTypeWriter();
+
+		write(w, value);
+
+		return w.toString();
+	}
+
+	public String toString(Collection<? extends T> values)
+	{
+		CustomTypeWriter w = new CustomTypeWriter();
+
+		writeAll(w, values);
+
+		return w.toString();
+	}
+
+	/**
+	 * @param typeName name without schema, as for CustomTypeArray
+	 */
+	public CustomTypeArray toArray(String typeName, Collection<? extends T> values)
+	{
+		if(values == null)
+		{
+			return null;
+		}
+
+		return new CustomTypeArray(typeName, toString(values));
+	}
+
+	/**
+	 * @return (CustomTypeWriter, type)void
+	 */
+	protected static MethodHandle handle(Class<?> type) throws ReflectiveOperationException
+	{
+		// getters by position
+		TreeMap<Integer, MethodHandle> getters = new TreeMap<Integer, MethodHandle>();
+		TreeMap<Integer, Type> types = new TreeMap<Integer, Type>();
+
+		Object[] components = recordComponents(type);
+
+		if(components != null)
+		{
+			for(int i = 0; i < components.length; i++)
+			{
+				Method accessor = (Method) components[i].getClass().getMethod("getAccessor").invoke(components[i]);
+				PgField field = type.getDeclaredField(accessor.getName()).getAnnotation(PgField.class);
+				int which = field == null || field.value() < 1 ? i + 1 : field.value();
+
+				accessor.setAccessible(true);
+
+				put(getters, which, LOOKUP.unreflect(accessor), type);
+				types.put(which, accessor.getGenericReturnType());
+			}
+		}
+		else
+		{
+			for(Field f : type.getDeclaredFields())
+			{
+				PgField field = f.getAnnotation(PgField.class);
+
+				if(field == null || Modifier.isStatic(f.getModifiers()))
+				{
+					continue;
+				}
+
+				if(field.value() < 1)
+				{
+					throw new IllegalArgumentException("No position in @PgField of "+f);
+				}
+
+				f.setAccessible(true);
+
+				put(getters, field.value(), LOOKUP.unreflectGetter(f), type);
+				types.put(field.value(), f.getGenericType());
+			}
+		}
+
+		if(getters.isEmpty())
+		{
+			throw new IllegalArgumentException("No fields in "+type.getName());
+		}
+
+		MethodHandle ret = null;
+
+		// written last to first, so every field is folded in front of the rest
+		for(int which = getters.lastKey(); which >= 1; which--)
+		{
+			MethodHandle getter = getters.get(which);
+			MethodHandle writer;
+
+			if(getter == null)
+			{
+				writer = MethodHandles.dropArguments(LOOKUP.findVirtual(CustomTypeWriter.class, "writeNull", MethodType.methodType(CustomTypeWriter.class)), 1, type);
+			}
+			else
+			{
+				writer = writer(types.get(which));
+				writer = writer.asType(MethodType.methodType(writer.type().returnType(), CustomTypeWriter.class, getter.type().returnType()));
+				writer = MethodHandles.filterArguments(writer, 1, getter);
+			}
+
+			writer = writer.asType(MethodType.methodType(void.class, CustomTypeWriter.class, type));
+
+			ret = ret == null ? writer : MethodHandles.foldArguments(ret, writer);
+		}
+
+		return ret;
+	}
+
+	protected static void put(TreeMap<Integer, MethodHandle> getters, int which, MethodHandle getter, Class<?> type)
+	{
+		if(getters.put(which, getter) != null)
+		{
+			throw new IllegalArgumentException("Duplicate position "+which+" in "+type.getName());
+		}
+	}
+
+	/**
+	 * @return the record components of a record, null for other classes
+	 */
+	protected static Object[] recordComponents(Class<?> type) throws ReflectiveOperationException
+	{
+		// looked up dynamically to keep working on runtimes without records
+		if(type.getSuperclass() == null || !type.getSuperclass().getName().equals("java.lang.Record"))
+		{
+			return null;
+		}
+
+		return (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+	}
+
+	/**
+	 * @return (CustomTypeWriter, type)CustomTypeWriter or void
+	 */
+	protected static MethodHandle writer(Type type) throws ReflectiveOperationException
+	{
+		Class<?> c = type instanceof ParameterizedType ? (Class<?>) ((ParameterizedType) type).getRawType() : (Class<?>) type;
+
+		if(c == int.class || c == long.class || c == short.class || c == byte.class)
+		{
+			return LOOKUP.findVirtual(CustomTypeWriter.class, "writeLong", MethodType.methodType(CustomTypeWriter.class, long.class));
+		}
+
+		if(c == double.class)
+		{
+			return LOOKUP.findVirtual(CustomTypeWriter.class, "writeDouble", MethodType.methodType(CustomTypeWriter.class, double.class));
+		}
+
+		if(c == float.class)
+		{
+			return LOOKUP.findVirtual(CustomTypeWriter.class, "writeFloat", MethodType.methodType(CustomTypeWriter.class, float.class));
+		}
+
+		if(c == boolean.class)
+		{
+			return LOOKUP.findVirtual(CustomTypeWriter.class, "writeBoolean", MethodType.methodType(CustomTypeWriter.class, boolean.class));
+		}
+
+		if(c == char.class)
+		{
+			return LOOKUP.findStatic(UDTEncoder.class, "writeChar", MethodType.methodType(void.class, CustomTypeWriter.class, char.class));
+		}
+
+		if(c == String.class)
+		{
+			return LOOKUP.findVirtual(CustomTypeWriter.class, "writeString", MethodType.methodType(CustomTypeWriter.class, CharSequence.class));
+		}
+
+		if(c == Integer.class || c == Long.class || c == Short.class || c == Byte.class)
+		{
+			return LOOKUP.findStatic(UDTEncoder.class, "writeLong", MethodType.methodType(void.class, CustomTypeWriter.class, Number.class));
+		}
+
+		if(Number.class.isAssignableFrom(c))
+		{
+			// e.g BigDecimal, written without quotes like the primitives
+			return MethodHandles.insertArguments(LOOKUP.findVirtual(CustomTypeWriter.class, "writeValue", MethodType.methodType(CustomTypeWriter.class, Object.class, boolean.class)), 2, true);
+		}
+
+		if(c.isEnum())
+		{
+			return LOOKUP.findStatic(UDTEncoder.class, "writeEnum", MethodType.methodType(void.class, CustomTypeWriter.class, Enum.class));
+		}
+
+		if(Collection.class.isAssignableFrom(c))
+		{
+			Type element = type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments()[0] : Object.class;
+			MethodHandle ret = LOOKUP.findStatic(UDTEncoder.class, "writeCollection", MethodType.methodType(void.class, Class.class, CustomTypeWriter.class, Collection.class));
+
+			return MethodHandles.insertArguments(ret, 0, isEncoded(element) ? (Class<?>) element : null);
+		}
+
+		if(isEncoded(c))
+		{
+			// nested encoders are looked up when encoding, so types can refer to themselves
+			return MethodHandles.insertArguments(LOOKUP.findStatic(UDTEncoder.class, "writeObject", MethodType.methodType(void.class, Class.class, CustomTypeWriter.class, Object.class)), 0, c);
+		}
+
+		return MethodHandles.insertArguments(LOOKUP.findVirtual(CustomTypeWriter.class, "writeValue", MethodType.methodType(CustomTypeWriter.class, Object.class, boolean.class)), 2, false);
+	}
+
+	/**
+	 * @return true for records and classes with {@link PgField} fields
+	 */
+	protected static boolean isEncoded(Type type)
+	{
+		if(!(type instanceof Class))
+		{
+			return false;
+		}
+
+		Class<?> c = (Class<?>) type;
+
+		if(c.getSuperclass() != null && c.getSuperclass().getName().equals("java.lang.Record"))
+		{
+			return true;
+		}
+
+		for(Field f : c.getDeclaredFields())
+		{
+			if(f.isAnnotationPresent(PgField.class))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	protected static void writeChar(CustomTypeWriter w, char v)
+	{
+		w.writeString(String.valueOf(v));
+	}
+
+	protected static void writeLong(CustomTypeWriter w, Number v)
+	{
+		if(v == null)
+		{
+			w.writeNull();
+		}
+		else
+		{
+			w.writeLong(v.longValue());
+		}
+	}
+
+	protected static void writeEnum(CustomTypeWriter w, Enum<?> v)
+	{
+		w.writeString(v == null ? null : v.name());
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	protected static void writeObject(Class type, CustomTypeWriter w, Object v)
+	{
+		of(type).write(w, v);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	protected static void writeCollection(Class type, CustomTypeWriter w, Collection v)
+	{
+		if(type != null)
+		{
+			of(type).writeAll(w, v);
+			return;
+		}
+
+		if(v == null)
+		{
+			w.writeNull();
+			return;
+		}
+
+		w.beginArray();
+
+		for(Object o : v)
+		{
+			w.writeValue(o, false);
+		}
+
+		w.endArray();
+	}
+}
@@ -0,0 +1,131 @@
+package org.ketsu.jdbc;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * The fields of a composite type that are going to be read, so that
+ * {@link UDTValue#createTape(String, UDTProjection)} can skip over the rest:
+ *
+ * <pre>
+ * static final UDTProjection SUMMARY = UDTProjection.of(orders, "id", "total", "status");
+ * </pre>
+ *
+ * It applies to the outermost types of the value, i.e the value itself or the
+ * elements of a top-level array of types. Other fields are read as NULL, the
+ * type ends at the last requested field and nothing is parsed inside the
+ * fields that are skipped.
+ */
+public class UDTProjection
+{
+	// indexed by the 1-based position
+	protected final boolean[] fields;
+
+	/**
+	 * @param which 1-based positions like in CustomType and UDTValue
+	 */
+	public UDTProjection(int... which)
+	{
+		int last = 0;
+
+		for(int w : which)
+		{
+			if(w < 1)
+			{
+				throw new IllegalArgumentException("which="+w);
+			}
+
+			last = Math.max(last, w);
+		}
+
+		fields = new boolean[last + 1];
+
+		for(int w : which)
+		{
+			fields[w] = true;
+		}
+	}
+
+	/**
+	 * @param mask bit n - 1 is set for the field at position n
+	 */
+	public static UDTProjection of(long mask)
+	{
+		int[] which = new int[Long.bitCount(mask)];
+		int n = 0;
+
+		for(int i = 0; i < 64; i++)
+		{
+			if((mask & (1L << i)) != 0)
+			{
+				which[n++] = i + 1;
+			}
+		}
+
+		return new UDTProjection(which);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if there is no such field in the type
+	 */
+	public static UDTProjection of(CompositeTypeDescriptor type, String... names)
+	{
+		int[] which = new int[names.length];
+
+		for(int i = 0; i < names.length; i++)
+		{
+			which[i] = type.position(names[i]);
+		}
+
+		return new UDTProjection(which);
+	}
+
+	public boolean contains(int which)
+	{
+		return which < fields.length && fields[which];
+	}
+
+	/**
+	 * @return the position of the last requested field
+	 */
+	public int getLast()
+	{
+		return fields.length - 1;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder ret = new StringBuilder();
+
+		for(int i = 1; i < fields.length; i++)
+		{
+			if(fields[i])
+			{
+				ret.append(ret.length() == 0 ? "[" : ", ").append(i);
+			}
+		}
+
+		return ret.length() == 0 ? "[]" : ret.append(']').toString();
+	}
+}
@@ -0,0 +1,620 @@
+package org.ketsu.jdbc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.ketsu.jdbc.UDTValue.Type;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Pull parser for composite type and array literals that reads the input
+ * sequentially, so memory use is bounded by the current element instead of
+ * the whole value, e.g for huge array_agg() results:
+ *
+ * <pre>
+ * UDTReader r = UDTReader.create(rset, "users");
+ *
+ * while(r.hasNext())
+ * {
+ *   switch(r.next())
+ *   {
+ *     case START_ROW: ...
+ *     case VALUE: r.getString(); ...
+ *   }
+ * }
+ * </pre>
+ *
+ * Unquoted brackets, i.e the top-level value and the dimensions of a
+ * multidimensional array, start a nested type or array. A quoted element is a
+ * VALUE, since a quoted nested type and a quoted string look the same: call
+ * {@link #enterRow()} or {@link #enterArray()} to read it as a nested value.
+ */
+public class UDTReader implements Closeable
+{
+	public static enum Event
+	{
+		START_ROW,
+		START_ARRAY,
+		VALUE,
+		END
+	}
+
+	protected static final int EOF = -1;
+	protected static final int EMPTY = -2;
+
+	protected final Reader reader;
+	protected final CharSequence sequence;
+
+	protected final char[] buffer;
+	protected int position;
+	protected int limit;
+
+	// per depth, see UDTScanner for the escaping layers
+	protected int[] pushback = new int[8];
+	protected long layers;
+
+	protected Type[] containers = new Type[8];
+	protected int[] depths = new int[8];
+	protected boolean[] quoted = new boolean[8];
+	protected boolean[] separated = new boolean[8];
+	protected int level = 0;
+
+	protected Event event;
+	protected boolean started;
+	protected boolean finished;
+
+	protected boolean valueNull;
+	protected boolean valuePending;
+	protected int valueDepth;
+	protected final StringBuilder value = new StringBuilder();
+	protected String string;
+
+	public UDTReader(Reader reader)
+	{
+		this(reader, null, new char[8192]);
+	}
+
+	public UDTReader(CharSequence sequence)
+	{
+		this(null, sequence, null);
+	}
+
+	protected UDTReader(Reader reader, CharSequence sequence, char[] buffer)
+	{
+		this.reader = reader;
+		this.sequence = sequence;
+		this.buffer = buffer;
+
+		Arrays.fill(pushback, EMPTY);
+
+		if(sequence != null)
+		{
+			limit = sequence.length();
+		}
+	}
+
+	public static UDTReader create(ResultSet rset, String col) throws SQLException
+	{
+		return new UDTReader(rset.getCharacterStream(col));
+	}
+
+	public static UDTReader create(ResultSet rset, int col) throws SQLException
+	{
+		return new UDTReader(rset.getCharacterStream(col));
+	}
+
+	public boolean hasNext()
+	{
+		return !finished;
+	}
+
+	public Event next()
+	{
+		if(finished)
+		{
+			throw new IllegalStateException("No more events");
+		}
+
+		if(valuePending)
+		{
+			readValue(false);
+		}
+
+		string = null;
+		valueNull = false;
+
+		if(!started)
+		{
+			started = true;
+
+			return event = start();
+		}
+
+		int d = depths[level - 1];
+
+		while(true)
+		{
+			int c = peek(d);
+
+			if(containers[level - 1] == Type.TYPE)
+			{
+				if(c == ')')
+				{
+					// NULL == ,, and () is a single NULL
+					if(separated[level - 1])
+					{
+						separated[level - 1] = false;
+
+						return nullValue();
+					}
+
+					read(d);
+
+					return end();
+				}
+
+				if(c == ',')
+				{
+					read(d);
+
+					if(separated[level - 1])
+					{
+						return nullValue();
+					}
+
+					separated[level - 1] = true;
+					continue;
+				}
+			}
+			else
+			{
+				if(c == '}')
+				{
+					read(d);
+
+					return end();
+				}
+
+				if(c == ',')
+				{
+					read(d);
+					continue;
+				}
+			}
+
+			if(c == EOF)
+			{
+				throw new IllegalStateException("Unexpected end of input");
+			}
+
+			separated[level - 1] = false;
+
+			if(c == '"')
+			{
+				read(d);
+
+				if(containers[level - 1] == Type.TYPE)
+				{
+					layers |= 1L << d;
+				}
+				else
+				{
+					layers &= ~(1L << d);
+				}
+
+				return element(d + 1, true);
+			}
+
+			return element(d, false);
+		}
+	}
+
+	protected Event start()
+	{
+		int c = peek(0);
+
+		if(c == EOF)
+		{
+			// NULL column
+			if(reader == null && sequence == null)
+			{
+				finished = true;
+
+				return nullValue();
+			}
+
+			throw new IllegalStateException("Unexpected end of input");
+		}
+
+		if(c == '(' || c == '{')
+		{
+			return element(0, false);
+		}
+
+		// a simple value, until the end of input
+		value.setLength(0);
+
+		while((c = read(0)) != EOF)
+		{
+			value.append((char) c);
+		}
+
+		finished = true;
+
+		return event = Event.VALUE;
+	}
+
+	protected Event element(int d, boolean q)
+	{
+		if(d >= UDTScanner.MAX_DEPTH)
+		{
+			throw new IllegalStateException("Too deeply nested: "+d);
+		}
+
+		if(d == pushback.length)
+		{
+			pushback = Arrays.copyOf(pushback, d * 2);
+			Arrays.fill(pushback, d, d * 2, EMPTY);
+		}
+
+		valueDepth = d;
+
+		if(q)
+		{
+			// nested only if the caller enters it
+			valuePending = true;
+
+			return event = Event.VALUE;
+		}
+
+		int c = peek(d);
+
+		if(c == '(')
+		{
+			read(d);
+			push(Type.TYPE, d, q);
+
+			return event = Event.START_ROW;
+		}
+
+		if(c == '{')
+		{
+			read(d);
+			push(Type.ARRAY, d, q);
+
+			return event = Event.START_ARRAY;
+		}
+
+		// unquoted values are short, read them right away to find NULLs
+		readUnquoted(d);
+
+		if(level > 0 && containers[level - 1] == Type.ARRAY && value.length() == 4 && "NULL".equalsIgnoreCase(value.toString()))
+		{
+			return nullValue();
+		}
+
+		return event = Event.VALUE;
+	}
+
+	/**
+	 * Reads the current quoted value as a nested type, its fields follow.
+	 *
+	 * @throws IllegalStateException if the value is not a quoted type
+	 */
+	public Event enterRow()
+	{
+		return enter('(', Type.TYPE, Event.START_ROW);
+	}
+
+	/**
+	 * Reads the current quoted value as a nested array, its elements follow.
+	 *
+	 * @throws IllegalStateException if the value is not a quoted array
+	 */
+	public Event enterArray()
+	{
+		return enter('{', Type.ARRAY, Event.START_ARRAY);
+	}
+
+	protected Event enter(char bracket, Type container, Event start)
+	{
+		if(event != Event.VALUE || !valuePending)
+		{
+			throw new IllegalStateException("Not an unread quoted value");
+		}
+
+		if(peek(valueDepth) != bracket)
+		{
+			throw new IllegalStateException("Not a quoted "+(container == Type.TYPE ? "type" : "array"));
+		}
+
+		read(valueDepth);
+		push(container, valueDepth, true);
+
+		valuePending = false;
+
+		return event = start;
+	}
+
+	protected Event nullValue()
+	{
+		valueNull = true;
+		valuePending = false;
+		value.setLength(0);
+
+		return event = Event.VALUE;
+	}
+
+	protected Event end()
+	{
+		level--;
+
+		if(quoted[level])
+		{
+			// the closing quote
+			if(read(depths[level]) != EOF)
+			{
+				throw new IllegalStateException("Expected the end of a quoted value");
+			}
+		}
+
+		if(level == 0)
+		{
+			finished = true;
+		}
+
+		return event = Event.END;
+	}
+
+	protected void push(Type container, int d, boolean q)
+	{
+		if(level == containers.length)
+		{
+			containers = Arrays.copyOf(containers, level * 2);
+			depths = Arrays.copyOf(depths, level * 2);
+			quoted = Arrays.copyOf(quoted, level * 2);
+			separated = Arrays.copyOf(separated, level * 2);
+		}
+
+		containers[level] = container;
+		depths[level] = d;
+		quoted[level] = q;
+		separated[level] = true;
+
+		level++;
+	}
+
+	protected void readUnquoted(int d)
+	{
+		value.setLength(0);
+
+		char close = level == 0 ? '\0' : containers[level - 1] == Type.TYPE ? ')' : '}';
+
+		while(true)
+		{
+			int c = peek(d);
+
+			if(c == EOF || c == ',' || c == close)
+			{
+				break;
+			}
+
+			value.append((char) read(d));
+		}
+	}
+
+	protected void readValue(boolean keep)
+	{
+		value.setLength(0);
+
+		int c;
+
+		while((c = read(valueDepth)) != EOF)
+		{
+			if(keep)
+			{
+				value.append((char) c);
+			}
+		}
+
+		valuePending = false;
+	}
+
+	/**
+	 * Skips the rest of the current type or array.
+	 */
+	public void skip()
+	{
+		if(event != Event.START_ROW && event != Event.START_ARRAY)
+		{
+			return;
+		}
+
+		int l = level;
+
+		while(level >= l && !finished)
+		{
+			next();
+		}
+	}
+
+	public Event getEvent()
+	{
+		return event;
+	}
+
+	/**
+	 * @return the number of types and arrays the reader is in
+	 */
+	public int getLevel()
+	{
+		return level;
+	}
+
+	public boolean isNull()
+	{
+		return event == Event.VALUE && valueNull;
+	}
+
+	public String getString()
+	{
+		if(event != Event.VALUE)
+		{
+			throw new IllegalStateException("Not a value: "+event);
+		}
+
+		if(valueNull)
+		{
+			return null;
+		}
+
+		if(valuePending)
+		{
+			readValue(true);
+		}
+
+		if(string == null)
+		{
+			string = value.toString();
+		}
+
+		return string;
+	}
+
+	public int getInt()
+	{
+		return isNull() ? 0 : Integer.parseInt(getString());
+	}
+
+	public long getLong()
+	{
+		return isNull() ? 0 : Long.parseLong(getString());
+	}
+
+	public double getDouble()
+	{
+		return isNull() ? 0 : Double.parseDouble(getString());
+	}
+
+	public boolean getBoolean()
+	{
+		return isNull() ? false : getString().equals("t");
+	}
+
+	protected int peek(int d)
+	{
+		int c = read(d);
+
+		pushback[d] = c;
+
+		return c;
+	}
+
+	/**
+	 * Reads the next logical character at the given depth.
+	 *
+	 * @return the character or EOF at the end of the input or the quoted value
+	 */
+	protected int read(int d)
+	{
+		int c = pushback[d];
+
+		if(c != EMPTY)
+		{
+			pushback[d] = EMPTY;
+
+			return c;
+		}
+
+		if(d == 0)
+		{
+			return readRaw();
+		}
+
+		c = read(d - 1);
+
+		if(c == '\\')
+		{
+			return read(d - 1);
+		}
+
+		if(c == '"')
+		{
+			// "" in a quoted type field
+			if((layers & (1L << (d - 1))) != 0 && peek(d - 1) == '"')
+			{
+				return read(d - 1);
+			}
+
+			return EOF;
+		}
+
+		return c;
+	}
+
+	protected int readRaw()
+	{
+		if(position == limit)
+		{
+			if(sequence != null || reader == null)
+			{
+				return EOF;
+			}
+
+			try
+			{
+				limit = reader.read(buffer, 0, buffer.length);
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+
+			position = 0;
+
+			if(limit <= 0)
+			{
+				limit = 0;
+				return EOF;
+			}
+		}
+
+		return sequence != null ? sequence.charAt(position++) : buffer[position++];
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if(reader != null)
+		{
+			reader.close();
+		}
+	}
+}
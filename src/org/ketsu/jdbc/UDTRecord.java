@@ -0,0 +1,276 @@
+package org.ketsu.jdbc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * A view of a composite value whose fields are read by name through its
+ * {@link CompositeTypeDescriptor}:
+ *
+ * <pre>
+ * UDTRecord user = UDTValue.create(rset, "user").as(users);
+ *
+ * int id = user.getInt("id");
+ * List&lt;UDTRecord&gt; addresses = user.getRecords("addresses");
+ * </pre>
+ *
+ * Names are resolved to positions with a lookup in the hash table of the
+ * descriptor, an unknown name throws an IllegalArgumentException instead of
+ * silently reading another field. The view is thread-safe if the value is.
+ */
+public class UDTRecord
+{
+	protected final UDTValue value;
+	protected final CompositeTypeDescriptor type;
+
+	public UDTRecord(UDTValue value, CompositeTypeDescriptor type)
+	{
+		this.value = value;
+		this.type = type;
+	}
+
+	public UDTValue getValue()
+	{
+		return value;
+	}
+
+	public CompositeTypeDescriptor getType()
+	{
+		return type;
+	}
+
+	public boolean isNull()
+	{
+		return value.isNull();
+	}
+
+	public UDTValue getValue(String field)
+	{
+		return value.getValue(type.position(field));
+	}
+
+	public boolean isNull(String field)
+	{
+		return value.isNull(type.position(field));
+	}
+
+	public String getString(String field)
+	{
+		return value.getString(type.position(field));
+	}
+
+	public int getInt(String field)
+	{
+		return value.getInt(type.position(field));
+	}
+
+	public long getLong(String field)
+	{
+		return value.getLong(type.position(field));
+	}
+
+	public double getDouble(String field)
+	{
+		return value.getDouble(type.position(field));
+	}
+
+	public boolean getBoolean(String field)
+	{
+		return value.getBoolean(type.position(field));
+	}
+
+	public LocalDate getDate(String field)
+	{
+		return value.getDate(type.position(field));
+	}
+
+	public Date getTimestamp(String field)
+	{
+		return value.getTimestamp(type.position(field));
+	}
+
+	public LocalDateTime getLocalDateTime(String field)
+	{
+		return value.getLocalDateTime(type.position(field));
+	}
+
+	public OffsetDateTime getOffsetDateTime(String field)
+	{
+		return value.getOffsetDateTime(type.position(field));
+	}
+
+	public long getEpochMicros(String field)
+	{
+		return value.getEpochMicros(type.position(field));
+	}
+
+	public Instant getInstant(String field)
+	{
+		return value.getInstant(type.position(field));
+	}
+
+	public byte[] getBytes(String field)
+	{
+		return value.getBytes(type.position(field));
+	}
+
+	public BigInteger getBigInteger(String field)
+	{
+		return value.getBigInteger(type.position(field));
+	}
+
+	public BigDecimal getBigDecimal(String field)
+	{
+		return value.getBigDecimal(type.position(field));
+	}
+
+	public List<String> getStringCollection(String field)
+	{
+		return value.getStringCollection(type.position(field));
+	}
+
+	public List<Integer> getIntegerCollection(String field)
+	{
+		return value.getIntegerCollection(type.position(field));
+	}
+
+	public List<Long> getLongCollection(String field)
+	{
+		return value.getLongCollection(type.position(field));
+	}
+
+	public List<Double> getDoubleCollection(String field)
+	{
+		return value.getDoubleCollection(type.position(field));
+	}
+
+	public int[] getIntArray(String field)
+	{
+		return value.getIntArray(type.position(field));
+	}
+
+	public long[] getLongArray(String field)
+	{
+		return value.getLongArray(type.position(field));
+	}
+
+	public double[] getDoubleArray(String field)
+	{
+		return value.getDoubleArray(type.position(field));
+	}
+
+	public List<LocalDate> getDateCollection(String field)
+	{
+		return value.getDateCollection(type.position(field));
+	}
+
+	public List<LocalTime> getTimeCollection(String field)
+	{
+		return value.getTimeCollection(type.position(field));
+	}
+
+	public List<Date> getTimestampCollection(String field)
+	{
+		return value.getTimestampCollection(type.position(field));
+	}
+
+	public List<Instant> getInstantCollection(String field)
+	{
+		return value.getInstantCollection(type.position(field));
+	}
+
+	public List<byte[]> getBytesCollection(String field)
+	{
+		return value.getBytesCollection(type.position(field));
+	}
+
+	/**
+	 * @return a view of a composite field, null for NULL
+	 */
+	public UDTRecord getRecord(String field)
+	{
+		int which = type.position(field);
+		UDTValue v = value.getValue(which);
+
+		if(v == null || v.isNull())
+		{
+			return null;
+		}
+
+		return new UDTRecord(v, fieldType(which));
+	}
+
+	/**
+	 * @return views of the elements of a composite array field, null for NULL
+	 */
+	public List<UDTRecord> getRecords(String field)
+	{
+		int which = type.position(field);
+		UDTValue v = value.getValue(which);
+
+		if(v == null || v.isNull())
+		{
+			return null;
+		}
+
+		CompositeTypeDescriptor elementType = fieldType(which);
+
+		List<UDTRecord> ret = new ArrayList<UDTRecord>(v.getSize());
+
+		for(UDTValue e : v)
+		{
+			ret.add(e.isNull() ? null : new UDTRecord(e, elementType));
+		}
+
+		return ret;
+	}
+
+	protected CompositeTypeDescriptor fieldType(int which)
+	{
+		CompositeTypeDescriptor ret = type.getFieldType(which);
+
+		if(ret == null)
+		{
+			throw new IllegalArgumentException("Not a composite field: "+type.getFieldName(which)+" in "+type.getName());
+		}
+
+		return ret;
+	}
+
+	@Override
+	public String toString()
+	{
+		return value.toString();
+	}
+}
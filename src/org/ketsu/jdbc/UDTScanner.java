@@ -0,0 +1,716 @@
+package org.ketsu.jdbc;
+
+import org.ketsu.jdbc.UDTValue.Type;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Finds the elements of a single level of a composite type or array literal
+ * without copying or unescaping anything.
+ *
+ * A value nested in the literal is described by its raw range and the
+ * escaping layers around it: depth is the number of layers and bit n of
+ * layers is set if layer n is a quoted type field and unset for a quoted
+ * array element.
+ */
+public class UDTScanner
+{
+	public static final int NULL_ELEMENT = 0;
+	public static final int UNQUOTED_ELEMENT = 1;
+	public static final int QUOTED_ELEMENT = 2;
+
+	public static final int MAX_DEPTH = 63;
+
+	public static interface ElementSink
+	{
+		void element(int start, int end, int kind);
+	}
+
+	protected final String source;
+	protected final UDTStringPool pool;
+
+	public UDTScanner(String source)
+	{
+		this(source, null);
+	}
+
+	/**
+	 * @param pool shares the decoded strings between elements, may be null
+	 */
+	public UDTScanner(String source, UDTStringPool pool)
+	{
+		this.source = source;
+		this.pool = pool;
+	}
+
+	protected UDTScanner(UDTStringPool pool)
+	{
+		this.source = null;
+		this.pool = pool;
+	}
+
+	/**
+	 * @return the raw start of the whole literal
+	 */
+	public int getStart()
+	{
+		return 0;
+	}
+
+	/**
+	 * @return the raw end of the whole literal
+	 */
+	public int getEnd()
+	{
+		return source.length();
+	}
+
+	public char charAt(int pos)
+	{
+		return source.charAt(pos);
+	}
+
+	protected String substring(int start, int end)
+	{
+		return source.substring(start, end);
+	}
+
+	public Type typeOf(int start, int end)
+	{
+		if(end - start < 2)
+		{
+			return Type.NORMAL;
+		}
+
+		// brackets are never escaped, so the raw characters are enough
+		char c = charAt(start);
+		char l = charAt(end - 1);
+
+		if(c == '(' && l == ')')
+		{
+			return Type.TYPE;
+		}
+		else if(c == '{' && l == '}')
+		{
+			return Type.ARRAY;
+		}
+
+		return Type.NORMAL;
+	}
+
+	/**
+	 * Layers of a quoted element of the given container, its depth is one more.
+	 */
+	public static long quotedLayers(long layers, int depth, Type container)
+	{
+		if(depth >= MAX_DEPTH)
+		{
+			throw new IllegalStateException("Too deeply nested: "+depth);
+		}
+
+		return container == Type.TYPE ? layers | (1L << depth) : layers;
+	}
+
+	public void scan(int start, int end, int depth, long layers, Type type, ElementSink sink)
+	{
+		scan(start, end, depth, layers, type, Integer.MAX_VALUE, sink);
+	}
+
+	/**
+	 * @param limit the number of fields of a type after which the rest is not scanned
+	 */
+	public void scan(int start, int end, int depth, long layers, Type type, int limit, ElementSink sink)
+	{
+		if(type == Type.TYPE)
+		{
+			scanType(start + 1, end - 1, depth, layers, limit, sink);
+		}
+		else if(type == Type.ARRAY)
+		{
+			scanArray(start + 1, end - 1, depth, layers, sink);
+		}
+	}
+
+	protected void scanType(int i, int max, int depth, long layers, int limit, ElementSink sink)
+	{
+		for(int n = 1; ; n++)
+		{
+			// NULL == ,, and () is a single NULL
+			if(i == max)
+			{
+				sink.element(0, 0, NULL_ELEMENT);
+				break;
+			}
+
+			long r = read(depth, layers, i);
+			char c = (char) (r >>> 32);
+
+			if(c == ',')
+			{
+				sink.element(0, 0, NULL_ELEMENT);
+
+				if(n == limit)
+				{
+					break;
+				}
+
+				i = (int) r;
+				continue;
+			}
+
+			if(c == '"')
+			{
+				int s = (int) r;
+				long q = skipQuoted(depth, layers, s, max, true);
+
+				sink.element(s, (int) (q >>> 32), QUOTED_ELEMENT);
+
+				i = (int) q;
+			}
+			else
+			{
+				int s = i;
+
+				i = skipUnquoted(depth, layers, i, max);
+
+				sink.element(s, i, UNQUOTED_ELEMENT);
+			}
+
+			if(i == max || n == limit)
+			{
+				break;
+			}
+
+			i = skipComma(depth, layers, i);
+		}
+	}
+
+	protected void scanArray(int i, int max, int depth, long layers, ElementSink sink)
+	{
+		// {}
+		if(i == max)
+		{
+			return;
+		}
+
+		while(true)
+		{
+			long r = read(depth, layers, i);
+			char c = (char) (r >>> 32);
+
+			if(c == '"')
+			{
+				int s = (int) r;
+				long q = skipQuoted(depth, layers, s, max, false);
+
+				sink.element(s, (int) (q >>> 32), QUOTED_ELEMENT);
+
+				i = (int) q;
+			}
+			else if(c == '{') // multidimensional arrays are not quoted
+			{
+				int s = i;
+
+				i = skipArray(depth, layers, i, max);
+
+				sink.element(s, i, UNQUOTED_ELEMENT);
+			}
+			else
+			{
+				int s = i;
+
+				i = skipUnquoted(depth, layers, i, max);
+
+				// array null == NULL, unquoted empty string is null too
+				if(i == s || isNullLiteral(s, i))
+				{
+					sink.element(0, 0, NULL_ELEMENT);
+				}
+				else
+				{
+					sink.element(s, i, UNQUOTED_ELEMENT);
+				}
+			}
+
+			if(i == max)
+			{
+				break;
+			}
+
+			i = skipComma(depth, layers, i);
+		}
+	}
+
+	/**
+	 * Reads the logical character at the given raw position by unescaping the
+	 * given number of layers.
+	 *
+	 * @return the character in the upper and the raw position after it in the lower 32 bits
+	 */
+	public long read(int depth, long layers, int pos)
+	{
+		if(depth == 0)
+		{
+			return ((long) charAt(pos) << 32) | (pos + 1);
+		}
+
+		long r = read(depth - 1, layers, pos);
+		char c = (char) (r >>> 32);
+
+		if(c == '\\')
+		{
+			return read(depth - 1, layers, (int) r);
+		}
+
+		// "" in a quoted type field
+		if(c == '"' && (layers & (1L << (depth - 1))) != 0)
+		{
+			return read(depth - 1, layers, (int) r);
+		}
+
+		return r;
+	}
+
+	/**
+	 * Skips the contents of a quoted element starting after the opening quote.
+	 *
+	 * @return the raw position of the closing quote in the upper and the position after it in the lower 32 bits
+	 */
+	protected long skipQuoted(int depth, long layers, int i, int max, boolean doubledQuotes)
+	{
+		while(i < max)
+		{
+			long r = read(depth, layers, i);
+			char c = (char) (r >>> 32);
+
+			if(c == '\\')
+			{
+				i = (int) read(depth, layers, (int) r);
+			}
+			else if(c == '"')
+			{
+				int next = (int) r;
+
+				if(doubledQuotes && next < max && (char) (read(depth, layers, next) >>> 32) == '"')
+				{
+					i = (int) read(depth, layers, next);
+				}
+				else
+				{
+					return ((long) i << 32) | next;
+				}
+			}
+			else
+			{
+				i = (int) r;
+			}
+		}
+
+		throw new IllegalStateException("Unterminated quoted value at "+i);
+	}
+
+	protected int skipArray(int depth, long layers, int i, int max)
+	{
+		int arrays = 0;
+
+		while(i < max)
+		{
+			long r = read(depth, layers, i);
+			char c = (char) (r >>> 32);
+
+			if(c == '"')
+			{
+				i = (int) skipQuoted(depth, layers, (int) r, max, false);
+				continue;
+			}
+
+			i = (int) r;
+
+			if(c == '{')
+			{
+				arrays++;
+			}
+			else if(c == '}' && --arrays == 0)
+			{
+				break;
+			}
+		}
+
+		return i;
+	}
+
+	protected int skipUnquoted(int depth, long layers, int i, int max)
+	{
+		while(i < max)
+		{
+			long r = read(depth, layers, i);
+
+			if((char) (r >>> 32) == ',')
+			{
+				break;
+			}
+
+			i = (int) r;
+		}
+
+		return i;
+	}
+
+	protected int skipComma(int depth, long layers, int i)
+	{
+		long r = read(depth, layers, i);
+
+		if((char) (r >>> 32) != ',')
+		{
+			throw new IllegalStateException("Expected , at "+i+": "+(char) (r >>> 32));
+		}
+
+		return (int) r;
+	}
+
+	public boolean isNullLiteral(int s, int e)
+	{
+		if(e - s != 4)
+		{
+			return false;
+		}
+
+		return (charAt(s) | 0x20) == 'n' && (charAt(s + 1) | 0x20) == 'u' && (charAt(s + 2) | 0x20) == 'l' && (charAt(s + 3) | 0x20) == 'l';
+	}
+
+	public String decode(int start, int end, int depth, long layers)
+	{
+		if(depth == 0 || isClean(start, end))
+		{
+			return pool == null ? substring(start, end) : pooled(start, end);
+		}
+
+		String ret = unescape(start, end, depth, layers);
+
+		return pool == null ? ret : pool.intern(ret);
+	}
+
+	protected String pooled(int start, int end)
+	{
+		return pool.get(source, start, end);
+	}
+
+	/**
+	 * @return true if there is nothing to unescape in the raw range
+	 */
+	public boolean isClean(int start, int end)
+	{
+		for(int i = start; i < end; i++)
+		{
+			char c = charAt(i);
+
+			if(c == '"' || c == '\\')
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	protected String unescape(int start, int end, int depth, long layers)
+	{
+		StringBuilder ret = new StringBuilder(end - start);
+
+		int i = start;
+
+		while(i < end)
+		{
+			long r = read(depth, layers, i);
+
+			ret.append((char) (r >>> 32));
+
+			i = (int) r;
+		}
+
+		return ret.toString();
+	}
+
+	/**
+	 * A view of the raw range, or the decoded string if it has to be unescaped.
+	 */
+	public CharSequence sequence(int start, int end, int depth, long layers)
+	{
+		if(depth == 0 || isClean(start, end))
+		{
+			return new Range(start, end);
+		}
+
+		return unescape(start, end, depth, layers);
+	}
+
+	public int parseInt(int start, int end, int depth, long layers)
+	{
+		long ret = parseLong(start, end, depth, layers);
+
+		if(ret < Integer.MIN_VALUE || ret > Integer.MAX_VALUE)
+		{
+			return Integer.parseInt(decode(start, end, depth, layers));
+		}
+
+		return (int) ret;
+	}
+
+	/**
+	 * Parses the number straight from the raw range, anything unusual is left
+	 * to Long.parseLong() for the exception.
+	 */
+	public long parseLong(int start, int end, int depth, long layers)
+	{
+		int i = start;
+		boolean negative = false;
+
+		if(i < end)
+		{
+			char c = charAt(i);
+
+			if(c == '-')
+			{
+				negative = true;
+				i++;
+			}
+			else if(c == '+')
+			{
+				i++;
+			}
+		}
+
+		if(i == end)
+		{
+			return Long.parseLong(decode(start, end, depth, layers));
+		}
+
+		// accumulated negatively like Long.parseLong() does
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long min = limit / 10;
+		long ret = 0;
+
+		for(; i < end; i++)
+		{
+			int digit = charAt(i) - '0';
+
+			if(digit < 0 || digit > 9 || ret < min)
+			{
+				return Long.parseLong(decode(start, end, depth, layers));
+			}
+
+			ret *= 10;
+
+			if(ret < limit + digit)
+			{
+				return Long.parseLong(decode(start, end, depth, layers));
+			}
+
+			ret -= digit;
+		}
+
+		return negative ? ret : -ret;
+	}
+
+	/**
+	 * Parses simple decimals with at most 15 or so significant digits straight
+	 * from the raw range, they are exact as both the digits and the power of
+	 * ten fit in a double. Everything else is left to Double.parseDouble().
+	 */
+	public double parseDouble(int start, int end, int depth, long layers)
+	{
+		int i = start;
+		boolean negative = false;
+
+		if(i < end)
+		{
+			char c = charAt(i);
+
+			if(c == '-')
+			{
+				negative = true;
+				i++;
+			}
+			else if(c == '+')
+			{
+				i++;
+			}
+		}
+
+		long digits = 0;
+		int scale = 0;
+		boolean any = false;
+
+		for(; i < end; i++)
+		{
+			int digit = charAt(i) - '0';
+
+			if(digit < 0 || digit > 9)
+			{
+				break;
+			}
+
+			digits = digits * 10 + digit;
+			any = true;
+
+			if(digits > MAX_EXACT)
+			{
+				return Double.parseDouble(decode(start, end, depth, layers));
+			}
+		}
+
+		if(i < end && charAt(i) == '.')
+		{
+			for(i++; i < end; i++)
+			{
+				int digit = charAt(i) - '0';
+
+				if(digit < 0 || digit > 9)
+				{
+					break;
+				}
+
+				digits = digits * 10 + digit;
+				scale--;
+				any = true;
+
+				if(digits > MAX_EXACT)
+				{
+					return Double.parseDouble(decode(start, end, depth, layers));
+				}
+			}
+		}
+
+		if(any && i < end && (charAt(i) | 0x20) == 'e')
+		{
+			i++;
+
+			boolean negativeExponent = false;
+
+			if(i < end && (charAt(i) == '-' || charAt(i) == '+'))
+			{
+				negativeExponent = charAt(i) == '-';
+				i++;
+			}
+
+			int exponent = 0;
+			int e = i;
+
+			for(; i < end && exponent < 1000; i++)
+			{
+				int digit = charAt(i) - '0';
+
+				if(digit < 0 || digit > 9)
+				{
+					break;
+				}
+
+				exponent = exponent * 10 + digit;
+			}
+
+			if(i == e)
+			{
+				any = false;
+			}
+
+			scale += negativeExponent ? -exponent : exponent;
+		}
+
+		if(!any || i != end || scale < -22 || scale > 22)
+		{
+			return Double.parseDouble(decode(start, end, depth, layers));
+		}
+
+		double ret = digits;
+
+		if(scale > 0)
+		{
+			ret *= POWERS_OF_TEN[scale];
+		}
+		else if(scale < 0)
+		{
+			ret /= POWERS_OF_TEN[-scale];
+		}
+
+		return negative ? -ret : ret;
+	}
+
+	protected static final long MAX_EXACT = 1L << 53;
+
+	protected static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	public boolean parseBoolean(int start, int end)
+	{
+		return end - start == 1 && charAt(start) == 't';
+	}
+
+	protected class Range implements CharSequence
+	{
+		protected final int start;
+		protected final int end;
+
+		protected Range(int start, int end)
+		{
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length()
+		{
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index)
+		{
+			if(index < 0 || index >= end - start)
+			{
+				throw new IndexOutOfBoundsException("index="+index+", length="+(end - start));
+			}
+
+			return UDTScanner.this.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int s, int e)
+		{
+			if(s < 0 || e > end - start || s > e)
+			{
+				throw new IndexOutOfBoundsException("start="+s+", end="+e+", length="+(end - start));
+			}
+
+			return new Range(start + s, start + e);
+		}
+
+		@Override
+		public String toString()
+		{
+			return substring(start, end);
+		}
+	}
+}
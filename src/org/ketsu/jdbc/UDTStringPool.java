@@ -0,0 +1,202 @@
+package org.ketsu.jdbc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * A small lossy pool of decoded strings, so that the many repeated values of
+ * a large literal, e.g. enum-like labels, share a single String instead of
+ * allocating a copy for every element.
+ *
+ * Each string has exactly one slot picked by its hash and a colliding string
+ * simply replaces it, so the pool never grows beyond its size and a lookup
+ * never costs more than one comparison.
+ *
+ * The pool can be shared between threads: the slots only ever hold immutable
+ * strings and a lost update only means a later miss.
+ */
+public class UDTStringPool
+{
+	protected final String[] strings;
+	protected final int mask;
+	protected final int maxLength;
+
+	public UDTStringPool()
+	{
+		this(4096, 32);
+	}
+
+	/**
+	 * @param size number of slots, rounded up to a power of two
+	 * @param maxLength longer strings are never pooled
+	 */
+	public UDTStringPool(int size, int maxLength)
+	{
+		if(size < 1 || size > 1 << 30)
+		{
+			throw new IllegalArgumentException("size="+size);
+		}
+
+		this.strings = new String[size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1];
+		this.mask = strings.length - 1;
+		this.maxLength = maxLength;
+	}
+
+	public String get(String source, int start, int end)
+	{
+		int length = end - start;
+
+		if(length == 0)
+		{
+			return "";
+		}
+
+		if(length > maxLength)
+		{
+			return source.substring(start, end);
+		}
+
+		int h = 0;
+
+		for(int i = start; i < end; i++)
+		{
+			h = 31 * h + source.charAt(i);
+		}
+
+		int slot = slot(h);
+		String ret = strings[slot];
+
+		if(ret != null && ret.length() == length && source.regionMatches(start, ret, 0, length))
+		{
+			return ret;
+		}
+
+		ret = source.substring(start, end);
+
+		strings[slot] = ret;
+
+		return ret;
+	}
+
+	/**
+	 * UTF-8 encoded range, only ASCII is compared in place and anything else
+	 * is decoded before the lookup.
+	 */
+	public String get(byte[] bytes, int start, int end)
+	{
+		int length = end - start;
+
+		if(length == 0)
+		{
+			return "";
+		}
+
+		if(length > maxLength)
+		{
+			return new String(bytes, start, length, StandardCharsets.UTF_8);
+		}
+
+		int h = 0;
+
+		for(int i = start; i < end; i++)
+		{
+			byte b = bytes[i];
+
+			if(b < 0)
+			{
+				return intern(new String(bytes, start, length, StandardCharsets.UTF_8));
+			}
+
+			h = 31 * h + b;
+		}
+
+		int slot = slot(h);
+		String ret = strings[slot];
+
+		if(ret != null && matches(ret, bytes, start, length))
+		{
+			return ret;
+		}
+
+		ret = new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+
+		strings[slot] = ret;
+
+		return ret;
+	}
+
+	/**
+	 * @return the pooled copy of the string, or the string itself after
+	 * pooling it
+	 */
+	public String intern(String s)
+	{
+		if(s.length() > maxLength)
+		{
+			return s;
+		}
+
+		int slot = slot(s.hashCode());
+		String ret = strings[slot];
+
+		if(s.equals(ret))
+		{
+			return ret;
+		}
+
+		strings[slot] = s;
+
+		return s;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(strings, null);
+	}
+
+	protected int slot(int h)
+	{
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	protected static boolean matches(String s, byte[] bytes, int start, int length)
+	{
+		if(s.length() != length)
+		{
+			return false;
+		}
+
+		for(int i = 0; i < length; i++)
+		{
+			if(s.charAt(i) != bytes[start + i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,570 @@
+package org.ketsu.jdbc;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.ketsu.jdbc.UDTValue.Type;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * The whole nested literal parsed in one go into a few primitive arrays.
+ *
+ * Nodes are laid out level by level, so the elements of every type or array
+ * are consecutive nodes and can be accessed by position. Values are returned
+ * as {@link TapeUDTValue} views over the tape.
+ *
+ * A tape and its values are immutable, they can be shared between threads
+ * and cached without any synchronisation.
+ */
+public class UDTTape
+{
+	protected static final byte NULL_NODE = 0;
+	protected static final byte NORMAL_NODE = 1;
+	protected static final byte TYPE_NODE = 2;
+	protected static final byte ARRAY_NODE = 3;
+
+	protected final UDTScanner scanner;
+
+	// final and never changed after the build, so a tape is safe to share between threads
+	protected final byte[] kinds;
+	protected final int[] starts;
+	protected final int[] ends;
+	protected final byte[] depths;
+	protected final long[] layers;
+	protected final int[] firsts;
+	protected final int[] sizes;
+	protected final int count;
+
+	public UDTTape(String source)
+	{
+		this(new UDTScanner(source));
+	}
+
+	public UDTTape(UDTScanner scanner)
+	{
+		this(scanner, new Builder(scanner, null).build());
+	}
+
+	/**
+	 * Only the requested fields of the outermost types are parsed, see
+	 * {@link UDTProjection}.
+	 */
+	public UDTTape(UDTScanner scanner, UDTProjection projection)
+	{
+		this(scanner, new Builder(scanner, projection).build());
+	}
+
+	/**
+	 * Builds the subtrees of the elements of a large top-level type or array
+	 * in parallel on the given pool, in chunks of about chunkSize raw
+	 * characters. Only the order of the nodes differs from a sequentially
+	 * built tape.
+	 */
+	public UDTTape(UDTScanner scanner, ForkJoinPool pool, int chunkSize)
+	{
+		this(scanner, new ParallelBuilder(scanner, chunkSize).build(pool));
+	}
+
+	protected UDTTape(UDTScanner scanner, Builder b)
+	{
+		this.scanner = scanner;
+
+		b.trim();
+
+		count = b.count;
+		kinds = b.kinds;
+		starts = b.starts;
+		ends = b.ends;
+		depths = b.depths;
+		layers = b.layers;
+		firsts = b.firsts;
+		sizes = b.sizes;
+	}
+
+	protected static class Builder
+	{
+		protected final UDTScanner scanner;
+		protected final UDTProjection projection;
+
+		protected byte[] kinds;
+		protected int[] starts;
+		protected int[] ends;
+		protected byte[] depths;
+		protected long[] layers;
+		protected int[] firsts;
+		protected int[] sizes;
+		protected int count;
+
+		// the node being scanned and whether only the projected fields of it are added
+		protected int current;
+		protected boolean projected;
+
+		protected Builder(UDTScanner scanner, UDTProjection projection)
+		{
+			this.scanner = scanner;
+			this.projection = projection;
+
+			int capacity = 16;
+
+			kinds = new byte[capacity];
+			starts = new int[capacity];
+			ends = new int[capacity];
+			depths = new byte[capacity];
+			layers = new long[capacity];
+			firsts = new int[capacity];
+			sizes = new int[capacity];
+		}
+
+		protected Builder build()
+		{
+			add(scanner.getStart(), scanner.getEnd(), 0, 0L);
+
+			return build(0);
+		}
+
+		/**
+		 * Adds the elements of the nodes from the given one on, level by level.
+		 */
+		protected Builder build(int from)
+		{
+			UDTScanner.ElementSink sink = this::element;
+
+			for(int n = from; n < count; n++)
+			{
+				byte kind = kinds[n];
+
+				if(kind != TYPE_NODE && kind != ARRAY_NODE)
+				{
+					continue;
+				}
+
+				current = n;
+				firsts[n] = count;
+
+				// no type layers above, so it is one of the outermost types
+				projected = projection != null && kind == TYPE_NODE && layers[n] == 0L;
+
+				try
+				{
+					if(!projected)
+					{
+						scanner.scan(starts[n], ends[n], depths[n], layers[n], kind == TYPE_NODE ? Type.TYPE : Type.ARRAY, sink);
+					}
+					else if(projection.getLast() > 0)
+					{
+						scanner.scan(starts[n], ends[n], depths[n], layers[n], Type.TYPE, projection.getLast(), sink);
+					}
+				}
+				catch(IllegalStateException | IndexOutOfBoundsException e)
+				{
+					// only looks like a type or an array, keep it as a simple value
+					count = firsts[n];
+					kinds[n] = NORMAL_NODE;
+				}
+
+				sizes[n] = count - firsts[n];
+			}
+
+			return this;
+		}
+
+		protected void element(int s, int e, int kind)
+		{
+			int n = current;
+
+			if(projected && !projection.contains(count - firsts[n] + 1))
+			{
+				add(NULL_NODE, 0, 0, 0, 0L);
+				return;
+			}
+
+			element(s, e, kind, depths[n], layers[n], kinds[n] == TYPE_NODE ? Type.TYPE : Type.ARRAY);
+		}
+
+		protected void element(int s, int e, int kind, int depth, long l, Type container)
+		{
+			if(kind == UDTScanner.NULL_ELEMENT)
+			{
+				add(NULL_NODE, 0, 0, 0, 0L);
+			}
+			else if(kind == UDTScanner.UNQUOTED_ELEMENT)
+			{
+				add(s, e, depth, l);
+			}
+			else
+			{
+				add(s, e, depth + 1, UDTScanner.quotedLayers(l, depth, container));
+			}
+		}
+
+		protected void add(int s, int e, int depth, long l)
+		{
+			Type type = scanner.typeOf(s, e);
+
+			add(type == Type.TYPE ? TYPE_NODE : type == Type.ARRAY ? ARRAY_NODE : NORMAL_NODE, s, e, depth, l);
+		}
+
+		protected void add(byte kind, int s, int e, int depth, long l)
+		{
+			if(count == kinds.length)
+			{
+				resize(count * 2);
+			}
+
+			kinds[count] = kind;
+			starts[count] = s;
+			ends[count] = e;
+			depths[count] = (byte) depth;
+			layers[count] = l;
+
+			count++;
+		}
+
+		protected void resize(int capacity)
+		{
+			kinds = Arrays.copyOf(kinds, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			depths = Arrays.copyOf(depths, capacity);
+			layers = Arrays.copyOf(layers, capacity);
+			firsts = Arrays.copyOf(firsts, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+		}
+
+		protected void trim()
+		{
+			if(kinds.length != count)
+			{
+				resize(count);
+			}
+		}
+	}
+
+	/**
+	 * Finds the top-level elements sequentially, which only has to skip over
+	 * quotes and brackets, and then builds the subtrees of chunks of them on a
+	 * fork-join pool. The chunks are appended after the top-level elements in
+	 * order, so every container still has consecutive elements.
+	 */
+	protected static class ParallelBuilder extends Builder
+	{
+		protected final int chunkSize;
+
+		// start, end and kind of every top-level element
+		protected int[] index = new int[48];
+		protected int size;
+
+		// first top-level element of every chunk, and one past the last
+		protected int[] bounds;
+		protected Builder[] chunks;
+
+		protected ParallelBuilder(UDTScanner scanner, int chunkSize)
+		{
+			super(scanner, null);
+
+			if(chunkSize < 1)
+			{
+				throw new IllegalArgumentException("chunkSize="+chunkSize);
+			}
+
+			this.chunkSize = chunkSize;
+		}
+
+		protected Builder build(ForkJoinPool pool)
+		{
+			add(scanner.getStart(), scanner.getEnd(), 0, 0L);
+
+			if(kinds[0] != TYPE_NODE && kinds[0] != ARRAY_NODE)
+			{
+				return this;
+			}
+
+			firsts[0] = 1;
+
+			try
+			{
+				scanner.scan(starts[0], ends[0], 0, 0L, getType(0), this::addIndex);
+			}
+			catch(IllegalStateException | IndexOutOfBoundsException e)
+			{
+				kinds[0] = NORMAL_NODE;
+
+				return this;
+			}
+
+			split();
+
+			if(chunks.length > 0)
+			{
+				pool.invoke(new ChunkTask(this, 0, chunks.length));
+			}
+
+			merge();
+
+			return this;
+		}
+
+		protected void addIndex(int s, int e, int kind)
+		{
+			int i = size * 3;
+
+			if(i == index.length)
+			{
+				index = Arrays.copyOf(index, i * 2);
+			}
+
+			index[i] = s;
+			index[i + 1] = e;
+			index[i + 2] = kind;
+
+			size++;
+		}
+
+		protected void split()
+		{
+			bounds = new int[size + 1];
+
+			int n = 0;
+			int chunkStart = 0;
+			// start of the first element of the chunk that is not NULL, NULLs have no offsets
+			int from = -1;
+
+			for(int i = 0; i < size; i++)
+			{
+				if(i == chunkStart)
+				{
+					bounds[n++] = i;
+					from = -1;
+				}
+
+				if(index[i * 3 + 2] == UDTScanner.NULL_ELEMENT)
+				{
+					continue;
+				}
+
+				if(from < 0)
+				{
+					from = index[i * 3];
+				}
+
+				if(index[i * 3 + 1] - from >= chunkSize)
+				{
+					chunkStart = i + 1;
+				}
+			}
+
+			bounds[n] = size;
+
+			chunks = new Builder[n];
+		}
+
+		protected void buildChunk(int c)
+		{
+			Builder b = new Builder(scanner, null);
+			Type type = getType(0);
+
+			for(int i = bounds[c]; i < bounds[c + 1]; i++)
+			{
+				b.element(index[i * 3], index[i * 3 + 1], index[i * 3 + 2], 0, 0L, type);
+			}
+
+			chunks[c] = b.build(0);
+		}
+
+		protected void merge()
+		{
+			int total = 1 + size;
+
+			for(int c = 0; c < chunks.length; c++)
+			{
+				total += chunks[c].count - (bounds[c + 1] - bounds[c]);
+			}
+
+			resize(total);
+
+			firsts[0] = 1;
+			sizes[0] = size;
+			count = 1 + size;
+
+			for(int c = 0; c < chunks.length; c++)
+			{
+				Builder b = chunks[c];
+				int roots = bounds[c + 1] - bounds[c];
+				int shift = count - roots;
+
+				copy(b, 0, 1 + bounds[c], roots, shift);
+				copy(b, roots, count, b.count - roots, shift);
+
+				count += b.count - roots;
+				chunks[c] = null;
+			}
+		}
+
+		/**
+		 * Copies the nodes of a chunk, whose nested elements move by shift.
+		 */
+		protected void copy(Builder b, int from, int to, int length, int shift)
+		{
+			System.arraycopy(b.kinds, from, kinds, to, length);
+			System.arraycopy(b.starts, from, starts, to, length);
+			System.arraycopy(b.ends, from, ends, to, length);
+			System.arraycopy(b.depths, from, depths, to, length);
+			System.arraycopy(b.layers, from, layers, to, length);
+			System.arraycopy(b.sizes, from, sizes, to, length);
+
+			for(int i = 0; i < length; i++)
+			{
+				byte kind = b.kinds[from + i];
+
+				firsts[to + i] = kind == TYPE_NODE || kind == ARRAY_NODE ? b.firsts[from + i] + shift : 0;
+			}
+		}
+
+		protected Type getType(int node)
+		{
+			return kinds[node] == TYPE_NODE ? Type.TYPE : Type.ARRAY;
+		}
+	}
+
+	protected static class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		protected final ParallelBuilder builder;
+		protected final int from;
+		protected final int to;
+
+		protected ChunkTask(ParallelBuilder builder, int from, int to)
+		{
+			this.builder = builder;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from == 1)
+			{
+				builder.buildChunk(from);
+			}
+			else
+			{
+				int middle = (from + to) >>> 1;
+
+				invokeAll(new ChunkTask(builder, from, middle), new ChunkTask(builder, middle, to));
+			}
+		}
+	}
+
+	public int getNodeCount()
+	{
+		return count;
+	}
+
+	public UDTValue getRoot()
+	{
+		return getValue(0);
+	}
+
+	public UDTValue getValue(int node)
+	{
+		if(kinds[node] == NULL_NODE)
+		{
+			return UDTValue.NULL;
+		}
+
+		return new TapeUDTValue(this, node);
+	}
+
+	public Type getType(int node)
+	{
+		switch(kinds[node])
+		{
+			case TYPE_NODE:
+				return Type.TYPE;
+
+			case ARRAY_NODE:
+				return Type.ARRAY;
+
+			default:
+				return Type.NORMAL;
+		}
+	}
+
+	public int getSize(int node)
+	{
+		return sizes[node];
+	}
+
+	/**
+	 * @return the node of the given 0-based element of a type or an array
+	 */
+	public int getElement(int node, int n)
+	{
+		return firsts[node] + n;
+	}
+
+	public boolean isNull(int node)
+	{
+		return kinds[node] == NULL_NODE;
+	}
+
+	public String toString(int node)
+	{
+		if(kinds[node] == NULL_NODE)
+		{
+			return null;
+		}
+
+		return scanner.decode(starts[node], ends[node], depths[node], layers[node]);
+	}
+
+	public int toInt(int node)
+	{
+		return scanner.parseInt(starts[node], ends[node], depths[node], layers[node]);
+	}
+
+	public long toLong(int node)
+	{
+		return scanner.parseLong(starts[node], ends[node], depths[node], layers[node]);
+	}
+
+	public double toDouble(int node)
+	{
+		return scanner.parseDouble(starts[node], ends[node], depths[node], layers[node]);
+	}
+
+	public boolean toBoolean(int node)
+	{
+		return scanner.parseBoolean(starts[node], ends[node]);
+	}
+
+	public CharSequence toCharSequence(int node)
+	{
+		return scanner.sequence(starts[node], ends[node], depths[node], layers[node]);
+	}
+}
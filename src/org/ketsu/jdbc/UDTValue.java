@@ -1,15 +1,16 @@
 package org.ketsu.jdbc;
 
-import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.time.ZoneOffset;
+import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoField;
@@ -17,6 +18,14 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /*
  * The MIT License (MIT)
@@ -60,11 +69,24 @@ public abstract class UDTValue implements Iterable<UDTValue>
   	  .append(TIME_FORMATTER)
   	  .toFormatter();
 
-	public static final boolean FORCE_COPYING = true;
+	public static final boolean FORCE_COPYING = false;
+
+	/**
+	 * Shorter literals are never parsed in parallel.
+	 */
+	public static final int PARALLEL_THRESHOLD = 1 << 20;
+	public static final int PARALLEL_CHUNK_SIZE = 1 << 16;
 
 	public static final UDTValue NULL = new CopyingUDTValue(null);
 	public static final UDTValue EMPTY = new CopyingUDTValue("");
 
+	static
+	{
+		// shared by every thread, parsed before the class initialisation publishes them
+		NULL.checkParsed();
+		EMPTY.checkParsed();
+	}
+
 	protected boolean parsed = false;
 	protected List<UDTValue> values;
 	protected Type type;
@@ -79,7 +101,20 @@ public abstract class UDTValue implements Iterable<UDTValue>
 		return create(rset.getString(col));
 	}
 
+	/**
+	 * The value is parsed lazily as it is accessed and is not thread-safe,
+	 * see {@link #createTape(String)} for values shared between threads.
+	 */
 	public static UDTValue create(String x)
+	{
+		return create(x, null);
+	}
+
+	/**
+	 * The decoded strings are shared through the given pool, which pays off
+	 * for large literals with many repeated values.
+	 */
+	public static UDTValue create(String x, UDTStringPool pool)
 	{
 		if(x == null)
 		{
@@ -96,12 +131,176 @@ public abstract class UDTValue implements Iterable<UDTValue>
 			return new CopyingUDTValue(x);
 		}
 
-		if(x.charAt(0) == '(' && x.charAt(x.length() - 1) == ')')
+		return new NoCopyUDTValue(new UDTScanner(x, pool));
+	}
+
+	/**
+	 * Parses UTF-8 encoded bytes without decoding them to a string first, e.g
+	 * from ResultSet.getBytes().
+	 */
+	public static UDTValue create(byte[] x)
+	{
+		if(x == null)
 		{
-			return new CopyingUDTValue(x);
+			return NULL;
+		}
+
+		return create(x, 0, x.length);
+	}
+
+	public static UDTValue create(byte[] x, int offset, int length)
+	{
+		return create(x, offset, length, null);
+	}
+
+	public static UDTValue create(byte[] x, int offset, int length, UDTStringPool pool)
+	{
+		if(x == null)
+		{
+			return NULL;
+		}
+
+		if(length == 0 || length == 2 && (x[offset] == '{' && x[offset + 1] == '}' || x[offset] == '(' && x[offset + 1] == ')'))
+		{
+			return EMPTY;
+		}
+
+		if(FORCE_COPYING)
+		{
+			return new CopyingUDTValue(new String(x, offset, length, StandardCharsets.UTF_8));
+		}
+
+		return new NoCopyUDTValue(new Utf8UDTScanner(x, offset, length, pool));
+	}
+
+	/**
+	 * Parses the remaining UTF-8 encoded bytes, direct buffers are copied.
+	 */
+	public static UDTValue create(ByteBuffer x)
+	{
+		if(x == null)
+		{
+			return NULL;
+		}
+
+		if(x.hasArray())
+		{
+			return create(x.array(), x.arrayOffset() + x.position(), x.remaining());
+		}
+
+		byte[] b = new byte[x.remaining()];
+
+		x.duplicate().get(b);
+
+		return create(b);
+	}
+
+	/**
+	 * Parses a value in the binary format of record_send or array_send.
+	 */
+	public static UDTValue createBinary(byte[] x)
+	{
+		if(x == null)
+		{
+			return NULL;
+		}
+
+		return new BinaryUDTValue(x);
+	}
+
+	public static UDTValue createBinary(ResultSet rset, String col) throws SQLException
+	{
+		return createBinary(rset.getBytes(col));
+	}
+
+	public static UDTValue createBinary(ResultSet rset, int col) throws SQLException
+	{
+		return createBinary(rset.getBytes(col));
+	}
+
+	/**
+	 * Parses the whole literal at once into an {@link UDTTape}, which uses a
+	 * fraction of the memory of separate objects when everything is going to
+	 * be read anyway.
+	 *
+	 * The returned value is immutable and thread-safe: everything is parsed
+	 * before it is returned and only kept in final fields, so it can be cached
+	 * and shared between threads without synchronisation, even when it is
+	 * published through a data race.
+	 */
+	public static UDTValue createTape(String x)
+	{
+		return createTape(x, (UDTStringPool) null);
+	}
+
+	public static UDTValue createTape(String x, UDTStringPool pool)
+	{
+		if(x == null)
+		{
+			return NULL;
+		}
+
+		if(x.isEmpty() || x.equals("{}") || x.equals("()"))
+		{
+			return EMPTY;
 		}
 
-		return null; // new NoCopyUDTValue(x);
+		return new UDTTape(new UDTScanner(x, pool)).getRoot();
+	}
+
+	/**
+	 * Parses only the requested fields of the value or of the elements of a
+	 * top-level array of types, the other fields are NULL and the types end
+	 * at the last requested field.
+	 */
+	public static UDTValue createTape(String x, UDTProjection projection)
+	{
+		if(x == null)
+		{
+			return NULL;
+		}
+
+		if(x.isEmpty() || x.equals("{}") || x.equals("()"))
+		{
+			return EMPTY;
+		}
+
+		return new UDTTape(new UDTScanner(x), projection).getRoot();
+	}
+
+	public static UDTValue createTape(ResultSet rset, String col, UDTProjection projection) throws SQLException
+	{
+		return createTape(rset.getString(col), projection);
+	}
+
+	/**
+	 * Like {@link #createTape(String)}, but the elements of a huge top-level
+	 * array or type, e.g an array_agg() of types, are parsed in parallel on
+	 * the common fork-join pool.
+	 */
+	public static UDTValue createParallel(String x)
+	{
+		return createParallel(x, ForkJoinPool.commonPool(), null);
+	}
+
+	public static UDTValue createParallel(String x, ForkJoinPool pool, UDTStringPool strings)
+	{
+		if(x == null || x.length() < PARALLEL_THRESHOLD)
+		{
+			return createTape(x, strings);
+		}
+
+		return new UDTTape(new UDTScanner(x, strings), pool, PARALLEL_CHUNK_SIZE).getRoot();
+	}
+
+	public static UDTValue createParallel(ResultSet rset, String col) throws SQLException
+	{
+		return createParallel(rset.getString(col));
+	}
+
+	public static UDTValue createParallel(ResultSet rset, int col) throws SQLException
+	{
+		return createParallel(rset.getString(col));
 	}
 
 	protected abstract void parse();
@@ -129,6 +328,15 @@ public abstract class UDTValue implements Iterable<UDTValue>
 	@Override
 	public abstract String toString();
 
+	/**
+	 * The value for parsing, can be a view of the original literal instead of
+	 * a new string.
+	 */
+	public CharSequence toCharSequence()
+	{
+		return toString();
+	}
+
 	public int toInt()
 	{
 		if(isNull())
@@ -186,7 +394,7 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		try
 		{
-			return LocalDate.parse(toString().substring(0, 10));
+			return PgDateTime.parseDate(toCharSequence());
 		}
 		catch (Exception e)
 		{
@@ -205,7 +413,7 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		try
 		{
-			return LocalTime.parse(toString());
+			return PgDateTime.parseTime(toCharSequence());
 		}
 		catch (Exception e)
 		{
@@ -220,11 +428,34 @@ public abstract class UDTValue implements Iterable<UDTValue>
 			return null;
 		}
 
+		return new Date(Math.floorDiv(toEpochMicros(), 1000L));
+	}
+
+	public Instant toInstant()
+	{
+		if(isNull())
+		{
+			return null;
+		}
+
+		return PgDateTime.toInstant(toEpochMicros());
+	}
+
+	/**
+	 * @return the date and time of a timestamp, the offset of a timestamptz is ignored
+	 */
+	public LocalDateTime toLocalDateTime()
+	{
+		if(isNull())
+		{
+			return null;
+		}
+
 		checkParsed();
 
 		try
 		{
-			return new Date(LocalDateTime.parse(toString().substring(0, 19), DATETIME_FORMATTER).toEpochSecond(ZoneOffset.UTC) * 1000);
+			return PgDateTime.parseLocalDateTime(toCharSequence());
 		}
 		catch (Exception e)
 		{
@@ -232,119 +463,167 @@ public abstract class UDTValue implements Iterable<UDTValue>
 		}
 	}
 
-	public Instant toInstant()
+	/**
+	 * @return the timestamp with its offset, UTC if it has none
+	 */
+	public OffsetDateTime toOffsetDateTime()
 	{
 		if(isNull())
 		{
 			return null;
 		}
 
-		return toTimestamp().toInstant();
+		checkParsed();
+
+		try
+		{
+			return PgDateTime.parseOffsetDateTime(toCharSequence());
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException("Parsing date string failed", e);
+		}
 	}
 
 	/**
-	 * @source internet, have lost the link
+	 * @return microseconds since 1970-01-01 UTC, timestamps without an offset are taken as UTC
 	 */
-	public byte[] toBytes()
+	public long toEpochMicros()
 	{
 		if(isNull())
 		{
-			return null;
+			return 0;
 		}
 
 		checkParsed();
 
-		String v = toString();
+		try
+		{
+			CharSequence v = toCharSequence();
 
-		if(v.startsWith("\\x"))
+			return PgDateTime.parseEpochMicros(v, 0, v.length());
+		}
+		catch (Exception e)
 		{
-			String hex = v.substring(2);
+			throw new RuntimeException("Parsing date string failed", e);
+		}
+	}
 
-			int len = hex.length();
-			ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2);
+	/**
+	 * Decodes a bytea in the hex or the escape format.
+	 */
+	public byte[] toBytes()
+	{
+		if(isNull())
+		{
+			return null;
+		}
 
-			int idx = 0;
-			while(idx < len)
-			{
-				int hexDigit = hex.charAt(idx++);
-				int byteValue = (hexValue(hexDigit) << 4);
+		checkParsed();
 
-				if(idx == len)
-				{
-					break;
-				}
+		return PgBytea.decode(toCharSequence());
+	}
 
-				hexDigit = hex.charAt(idx++);
-				byteValue += hexValue(hexDigit);
+	public BigInteger toBigInteger()
+	{
+		if(isNull())
+		{
+			return null;
+		}
 
-				bytes.write(byteValue);
-			}
+		return new BigInteger(toString());
+	}
 
-      return bytes.toByteArray();
+	public BigDecimal toBigDecimal()
+	{
+		if(isNull())
+		{
+			return null;
 		}
 
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		return new BigDecimal(toString());
+	}
 
-		int len = v.length();
-		int idx = 0;
-		while(idx < len)
+	public List<String> toStringCollection()
+	{
+		if(isNull())
 		{
-			int ch = v.charAt(idx++);
+			return null;
+		}
 
-			if(ch == '\\')
-			{
-				ch = v.charAt(idx++);
+		checkParsed();
 
-				if(ch == '\\')
-				{
-					bytes.write('\\');
-					continue;
-				}
+		List<String> ret = new ArrayList<String>(getSize());
 
-				int val = octalValue(ch);
+		for(UDTValue v : this)
+		{
+			ret.add(v.toString());
+		}
 
-				ch = v.charAt(idx++);
+		return ret;
+	}
 
-				val <<= 3;
-				val += octalValue(ch);
+	public List<Integer> toIntegerCollection()
+	{
+		if(isNull())
+		{
+			return null;
+		}
 
-				ch = v.charAt(idx++);
+		checkParsed();
 
-				val <<= 3;
-				val += octalValue(ch);
+		List<Integer> ret = new ArrayList<Integer>(getSize());
 
-				bytes.write(val);
-			}
-			else
-			{
-				bytes.write(ch);
-			}
+		for(int i = 0, max = getSize(); i < max; i++)
+		{
+			ret.add(intAt(i));
 		}
 
-		return bytes.toByteArray();
+		return ret;
 	}
 
-	public BigInteger toBigInteger()
+	public List<Long> toLongCollection()
 	{
 		if(isNull())
 		{
 			return null;
 		}
 
-		return new BigInteger(toString());
+		checkParsed();
+
+		List<Long> ret = new ArrayList<Long>(getSize());
+
+		for(int i = 0, max = getSize(); i < max; i++)
+		{
+			ret.add(longAt(i));
+		}
+
+		return ret;
 	}
 
-	public BigDecimal toBigDecimal()
+	public List<Double> toDoubleCollection()
 	{
 		if(isNull())
 		{
 			return null;
 		}
 
-		return new BigDecimal(toString());
+		checkParsed();
+
+		List<Double> ret = new ArrayList<Double>(getSize());
+
+		for(int i = 0, max = getSize(); i < max; i++)
+		{
+			ret.add(doubleAt(i));
+		}
+
+		return ret;
 	}
 
-	public List<String> toStringCollection()
+	/**
+	 * @return the elements as an array, NULL elements as 0 like getInt()
+	 */
+	public int[] toIntArray()
 	{
 		if(isNull())
 		{
@@ -353,17 +632,17 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		checkParsed();
 
-		List<String> ret = new ArrayList<String>(values.size());
+		int[] ret = new int[getSize()];
 
-		for(UDTValue v : values)
+		for(int i = 0; i < ret.length; i++)
 		{
-			ret.add(v.toString());
+			ret[i] = intAt(i);
 		}
 
 		return ret;
 	}
 
-	public List<Integer> toIntegerCollection()
+	public long[] toLongArray()
 	{
 		if(isNull())
 		{
@@ -372,17 +651,17 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		checkParsed();
 
-		List<Integer> ret = new ArrayList<Integer>(values.size());
+		long[] ret = new long[getSize()];
 
-		for(UDTValue v : values)
+		for(int i = 0; i < ret.length; i++)
 		{
-			ret.add(v.toInt());
+			ret[i] = longAt(i);
 		}
 
 		return ret;
 	}
 
-	public List<Long> toLongCollection()
+	public double[] toDoubleArray()
 	{
 		if(isNull())
 		{
@@ -391,33 +670,85 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		checkParsed();
 
-		List<Long> ret = new ArrayList<Long>(values.size());
+		double[] ret = new double[getSize()];
 
-		for(UDTValue v : values)
+		for(int i = 0; i < ret.length; i++)
 		{
-			ret.add(v.toLong());
+			ret[i] = doubleAt(i);
 		}
 
 		return ret;
 	}
 
-	public List<Double> toDoubleCollection()
+	/**
+	 * @return a view of the elements parsed as they are consumed, empty for NULL
+	 */
+	public IntStream toIntStream()
 	{
 		if(isNull())
 		{
-			return null;
+			return IntStream.empty();
 		}
 
-		checkParsed();
+		return IntStream.range(0, getSize()).map(this::intAt);
+	}
 
-		List<Double> ret = new ArrayList<Double>(values.size());
+	public LongStream toLongStream()
+	{
+		if(isNull())
+		{
+			return LongStream.empty();
+		}
 
-		for(UDTValue v : values)
+		return IntStream.range(0, getSize()).mapToLong(this::longAt);
+	}
+
+	public DoubleStream toDoubleStream()
+	{
+		if(isNull())
 		{
-			ret.add(v.toDouble());
+			return DoubleStream.empty();
 		}
 
-		return ret;
+		return IntStream.range(0, getSize()).mapToDouble(this::doubleAt);
+	}
+
+	/**
+	 * The given 0-based element for the spliterator, called from several
+	 * threads at once after the level is parsed.
+	 */
+	protected UDTValue valueAt(int n)
+	{
+		return getValue(n + 1);
+	}
+
+	/**
+	 * Parses the given 0-based element, subclasses read it without creating
+	 * the element.
+	 */
+	protected int intAt(int n)
+	{
+		return getValue(n + 1).toInt();
+	}
+
+	protected long longAt(int n)
+	{
+		return getValue(n + 1).toLong();
+	}
+
+	protected double doubleAt(int n)
+	{
+		return getValue(n + 1).toDouble();
+	}
+
+	protected boolean booleanAt(int n)
+	{
+		return getValue(n + 1).toBoolean();
+	}
+
+	protected boolean isNullAt(int n)
+	{
+		return getValue(n + 1).isNull();
 	}
 
 	public List<Boolean> toBooleanCollection()
@@ -429,9 +760,9 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		checkParsed();
 
-		List<Boolean> ret = new ArrayList<Boolean>(values.size());
+		List<Boolean> ret = new ArrayList<Boolean>(getSize());
 
-		for(UDTValue v : values)
+		for(UDTValue v : this)
 		{
 			ret.add(v.toBoolean());
 		}
@@ -448,9 +779,9 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		checkParsed();
 
-		List<LocalDate> ret = new ArrayList<LocalDate>(values.size());
+		List<LocalDate> ret = new ArrayList<LocalDate>(getSize());
 
-		for(UDTValue v : values)
+		for(UDTValue v : this)
 		{
 			ret.add(v.toDate());
 		}
@@ -467,9 +798,9 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		checkParsed();
 
-		List<LocalTime> ret = new ArrayList<LocalTime>(values.size());
+		List<LocalTime> ret = new ArrayList<LocalTime>(getSize());
 
-		for(UDTValue v : values)
+		for(UDTValue v : this)
 		{
 			ret.add(v.toTime());
 		}
@@ -486,9 +817,9 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		checkParsed();
 
-		List<Date> ret = new ArrayList<Date>(values.size());
+		List<Date> ret = new ArrayList<Date>(getSize());
 
-		for(UDTValue v : values)
+		for(UDTValue v : this)
 		{
 			ret.add(v.toTimestamp());
 		}
@@ -505,9 +836,9 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		checkParsed();
 
-		List<Instant> ret = new ArrayList<Instant>(values.size());
+		List<Instant> ret = new ArrayList<Instant>(getSize());
 
-		for(UDTValue v : values)
+		for(UDTValue v : this)
 		{
 			ret.add(v.toInstant());
 		}
@@ -524,9 +855,9 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		checkParsed();
 
-		List<byte[]> ret = new ArrayList<byte[]>(values.size());
+		List<byte[]> ret = new ArrayList<byte[]>(getSize());
 
-		for(UDTValue v : values)
+		for(UDTValue v : this)
 		{
 			ret.add(v.toBytes());
 		}
@@ -534,6 +865,30 @@ public abstract class UDTValue implements Iterable<UDTValue>
 		return ret;
 	}
 
+	/**
+	 * Decodes the value into a record or an annotated class, see {@link UDTDecoder}.
+	 */
+	public <T> T toObject(Class<T> type)
+	{
+		return UDTDecoder.of(type).decode(this);
+	}
+
+	/**
+	 * Decodes the elements of an array into records or annotated classes.
+	 */
+	public <T> List<T> toList(Class<T> type)
+	{
+		return UDTDecoder.of(type).decodeAll(this);
+	}
+
+	/**
+	 * @return a view that reads the fields by their names in the given type
+	 */
+	public UDTRecord as(CompositeTypeDescriptor type)
+	{
+		return new UDTRecord(this, type);
+	}
+
 	public UDTValue getValue(int which)
 	{
 		if(getSize() < which)
@@ -546,9 +901,7 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 	public boolean isNull(int which)
 	{
-		UDTValue v = getValue(which);
-
-		return v == null || v.isNull();
+		return getSize() < which || isNullAt(which - 1);
 	}
 
 	public String getString(int which)
@@ -565,50 +918,42 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 	public int getInt(int which)
 	{
-		UDTValue v = getValue(which);
-
-		if(v == null)
+		if(getSize() < which)
 		{
 			return 0;
 		}
 
-		return v.toInt();
+		return intAt(which - 1);
 	}
 
 	public long getLong(int which)
 	{
-		UDTValue v = getValue(which);
-
-		if(v == null)
+		if(getSize() < which)
 		{
 			return 0;
 		}
 
-		return v.toLong();
+		return longAt(which - 1);
 	}
 
 	public double getDouble(int which)
 	{
-		UDTValue v = getValue(which);
-
-		if(v == null)
+		if(getSize() < which)
 		{
 			return 0;
 		}
 
-		return v.toDouble();
+		return doubleAt(which - 1);
 	}
 
 	public boolean getBoolean(int which)
 	{
-		UDTValue v = getValue(which);
-
-		if(v == null)
+		if(getSize() < which)
 		{
 			return false;
 		}
 
-		return v.toBoolean();
+		return booleanAt(which - 1);
 	}
 
 	public LocalDate getDate(int which)
@@ -623,6 +968,18 @@ public abstract class UDTValue implements Iterable<UDTValue>
 		return v.toDate();
 	}
 
+	public LocalTime getTime(int which)
+	{
+		UDTValue v = getValue(which);
+
+		if(v == null)
+		{
+			return null;
+		}
+
+		return v.toTime();
+	}
+
 	public Date getTimestamp(int which)
 	{
 		UDTValue v = getValue(which);
@@ -635,6 +992,42 @@ public abstract class UDTValue implements Iterable<UDTValue>
 		return v.toTimestamp();
 	}
 
+	public LocalDateTime getLocalDateTime(int which)
+	{
+		UDTValue v = getValue(which);
+
+		if(v == null)
+		{
+			return null;
+		}
+
+		return v.toLocalDateTime();
+	}
+
+	public OffsetDateTime getOffsetDateTime(int which)
+	{
+		UDTValue v = getValue(which);
+
+		if(v == null)
+		{
+			return null;
+		}
+
+		return v.toOffsetDateTime();
+	}
+
+	public long getEpochMicros(int which)
+	{
+		UDTValue v = getValue(which);
+
+		if(v == null)
+		{
+			return 0;
+		}
+
+		return v.toEpochMicros();
+	}
+
 	public Instant getInstant(int which)
 	{
 		UDTValue v = getValue(which);
@@ -731,6 +1124,42 @@ public abstract class UDTValue implements Iterable<UDTValue>
 		return v.toDoubleCollection();
 	}
 
+	public int[] getIntArray(int which)
+	{
+		UDTValue v = getValue(which);
+
+		if(v == null)
+		{
+			return null;
+		}
+
+		return v.toIntArray();
+	}
+
+	public long[] getLongArray(int which)
+	{
+		UDTValue v = getValue(which);
+
+		if(v == null)
+		{
+			return null;
+		}
+
+		return v.toLongArray();
+	}
+
+	public double[] getDoubleArray(int which)
+	{
+		UDTValue v = getValue(which);
+
+		if(v == null)
+		{
+			return null;
+		}
+
+		return v.toDoubleArray();
+	}
+
 	public List<LocalDate> getDateCollection(int which)
 	{
 		UDTValue v = getValue(which);
@@ -800,30 +1229,24 @@ public abstract class UDTValue implements Iterable<UDTValue>
 
 		checkParsed();
 
-		return values != null && !values.isEmpty();
+		return getSize() > 0;
 	}
 
 	public abstract boolean isNull();
 
 	public boolean isArray()
 	{
-		checkParsed();
-
-		return type == Type.ARRAY;
+		return getType() == Type.ARRAY;
 	}
 
 	public boolean isType()
 	{
-		checkParsed();
-
-		return type == Type.TYPE;
+		return getType() == Type.TYPE;
 	}
 
 	public boolean isSimpleValue()
 	{
-		checkParsed();
-
-		return type == Type.NORMAL;
+		return getType() == Type.NORMAL;
 	}
 
 	public Type getType()
@@ -845,18 +1268,24 @@ public abstract class UDTValue implements Iterable<UDTValue>
 	{
 		return new Iterator<UDTValue>()
 		{
+			protected final int size = getSize();
 			protected int current = 0;
 
 			@Override
 			public boolean hasNext()
 			{
-				return current < getSize();
+				return current < size;
 			}
 
 			@Override
 			public UDTValue next()
 			{
-				return values.get(current++);
+				if(current >= size)
+				{
+					throw new NoSuchElementException();
+				}
+
+				return getValue(++current);
 			}
 
 			@Override
@@ -867,6 +1296,26 @@ public abstract class UDTValue implements Iterable<UDTValue>
 		};
 	}
 
+	@Override
+	public Spliterator<UDTValue> spliterator()
+	{
+		return new UDTValueSpliterator(this);
+	}
+
+	public Stream<UDTValue> stream()
+	{
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * The elements are processed on the common fork-join pool, this value must
+	 * not be used by other threads meanwhile unless it is a tape value.
+	 */
+	public Stream<UDTValue> parallelStream()
+	{
+		return StreamSupport.stream(spliterator(), true);
+	}
+
 	protected void addValue(UDTValue v)
 	{
 		if(values == null)
@@ -920,32 +1369,4 @@ public abstract class UDTValue implements Iterable<UDTValue>
 		ARRAY,
 		NORMAL
 	}
-
-	protected static int hexValue(final int hexDigit)
-	{
-		if(hexDigit >= '0' && hexDigit <= '9')
-		{
-			return hexDigit - '0';
-		}
-		else if(hexDigit >= 'a' && hexDigit <= 'f')
-		{
-			return hexDigit - 'a' + 10;
-		}
-		else if(hexDigit >= 'A' && hexDigit <= 'F')
-		{
-			return hexDigit - 'A' + 10;
-		}
-
-		throw new RuntimeException("Unknown format: " + hexDigit);
-	}
-
-	protected static int octalValue(final int octalDigit)
-	{
-		if(octalDigit < '0' || octalDigit > '7')
-		{
-			throw new RuntimeException("Unknown format: " + octalDigit);
-		}
-
-		return octalDigit - '0';
-	}
 }
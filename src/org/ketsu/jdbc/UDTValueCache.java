@@ -0,0 +1,122 @@
+package org.ketsu.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * A bounded cache of parsed values by their literal for values that are
+ * returned again and again, e.g lookup tables joined into many rows:
+ *
+ * <pre>
+ * static final UDTValueCache CACHE = new UDTValueCache(16 * 1024 * 1024);
+ *
+ * UDTValue v = CACHE.create(rset, "config");
+ * </pre>
+ *
+ * Values are parsed with {@link UDTValue#createTape(String)}, so the same
+ * instance can be returned to any thread. The least recently used values are
+ * evicted when the total length of the cached literals exceeds the limit.
+ */
+public class UDTValueCache
+{
+	protected final Cache<String, UDTValue> cache;
+
+	/**
+	 * @param maxLength maximum total length of the cached literals
+	 */
+	public UDTValueCache(long maxLength)
+	{
+		cache = CacheBuilder.newBuilder()
+			.maximumWeight(maxLength)
+			.weigher((String k, UDTValue v) -> k.length())
+			.recordStats()
+			.build();
+	}
+
+	public UDTValue create(ResultSet rset, String col) throws SQLException
+	{
+		return create(rset.getString(col));
+	}
+
+	public UDTValue create(ResultSet rset, int col) throws SQLException
+	{
+		return create(rset.getString(col));
+	}
+
+	public UDTValue create(String x)
+	{
+		if(x == null)
+		{
+			return UDTValue.NULL;
+		}
+
+		UDTValue ret = cache.getIfPresent(x);
+
+		if(ret == null)
+		{
+			// parsed twice when missed by two threads at once, either is fine
+			ret = UDTValue.createTape(x);
+
+			cache.put(x, ret);
+		}
+
+		return ret;
+	}
+
+	public long getHitCount()
+	{
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount()
+	{
+		return cache.stats().missCount();
+	}
+
+	public long getEvictionCount()
+	{
+		return cache.stats().evictionCount();
+	}
+
+	public CacheStats getStats()
+	{
+		return cache.stats();
+	}
+
+	public long size()
+	{
+		return cache.size();
+	}
+
+	public void clear()
+	{
+		cache.invalidateAll();
+	}
+}
@@ -0,0 +1,114 @@
+package org.ketsu.jdbc;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Splits the elements of a type or an array by index, so parallel streams
+ * get balanced halves of known size.
+ *
+ * The level is parsed before the spliterator is created and the elements are
+ * created without touching the cache of the value, so the elements can be
+ * processed on different threads as long as the value itself is not used
+ * concurrently.
+ */
+public class UDTValueSpliterator implements Spliterator<UDTValue>
+{
+	protected final UDTValue value;
+	protected int index;
+	protected final int fence;
+
+	public UDTValueSpliterator(UDTValue value)
+	{
+		this(value, 0, value.getSize());
+	}
+
+	/**
+	 * @param index 0-based first element
+	 * @param fence one past the last element
+	 */
+	protected UDTValueSpliterator(UDTValue value, int index, int fence)
+	{
+		this.value = value;
+		this.index = index;
+		this.fence = fence;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super UDTValue> action)
+	{
+		if(index >= fence)
+		{
+			return false;
+		}
+
+		action.accept(value.valueAt(index++));
+
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super UDTValue> action)
+	{
+		int i = index;
+
+		index = fence;
+
+		for(; i < fence; i++)
+		{
+			action.accept(value.valueAt(i));
+		}
+	}
+
+	@Override
+	public Spliterator<UDTValue> trySplit()
+	{
+		int middle = (index + fence) >>> 1;
+
+		if(middle <= index)
+		{
+			return null;
+		}
+
+		Spliterator<UDTValue> ret = new UDTValueSpliterator(value, index, middle);
+
+		index = middle;
+
+		return ret;
+	}
+
+	@Override
+	public long estimateSize()
+	{
+		return fence - index;
+	}
+
+	@Override
+	public int characteristics()
+	{
+		return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+}
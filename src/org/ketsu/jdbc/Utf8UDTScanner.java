@@ -0,0 +1,132 @@
+package org.ketsu.jdbc;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Scans UTF-8 encoded literals as they are, e.g from ResultSet.getBytes().
+ *
+ * All the structural characters are ASCII and the bytes of multibyte
+ * characters never are, so the literal can be scanned byte by byte and only
+ * the strings need to be decoded.
+ */
+public class Utf8UDTScanner extends UDTScanner
+{
+	protected final byte[] bytes;
+	protected final int offset;
+	protected final int length;
+
+	public Utf8UDTScanner(byte[] bytes)
+	{
+		this(bytes, 0, bytes.length);
+	}
+
+	public Utf8UDTScanner(byte[] bytes, int offset, int length)
+	{
+		this(bytes, offset, length, null);
+	}
+
+	public Utf8UDTScanner(byte[] bytes, int offset, int length, UDTStringPool pool)
+	{
+		super(pool);
+
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public int getStart()
+	{
+		return offset;
+	}
+
+	@Override
+	public int getEnd()
+	{
+		return offset + length;
+	}
+
+	@Override
+	public char charAt(int pos)
+	{
+		if(pos >= offset + length)
+		{
+			throw new IndexOutOfBoundsException("pos="+pos);
+		}
+
+		return (char) (bytes[pos] & 0xff);
+	}
+
+	/**
+	 * A view of the raw range only if it is ASCII, as the bytes of a
+	 * multi-byte character are not chars of the value.
+	 */
+	@Override
+	public CharSequence sequence(int start, int end, int depth, long layers)
+	{
+		for(int i = start; i < end; i++)
+		{
+			if(bytes[i] < 0)
+			{
+				return decode(start, end, depth, layers);
+			}
+		}
+
+		return super.sequence(start, end, depth, layers);
+	}
+
+	@Override
+	protected String substring(int start, int end)
+	{
+		return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	protected String pooled(int start, int end)
+	{
+		return pool.get(bytes, start, end);
+	}
+
+	@Override
+	protected String unescape(int start, int end, int depth, long layers)
+	{
+		byte[] ret = new byte[end - start];
+		int n = 0;
+
+		int i = start;
+
+		while(i < end)
+		{
+			long r = read(depth, layers, i);
+
+			ret[n++] = (byte) (r >>> 32);
+
+			i = (int) r;
+		}
+
+		return new String(ret, 0, n, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,120 @@
+package org.ketsu.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * The scalar getters parse unescaped leaves straight from the source, so
+ * reading them must not allocate anything once the level is indexed.
+ */
+public class AllocationTest
+{
+	protected static final String LITERAL = "(123,\"-456\",t,1.25,,\"some \\\\\"\"text\\\\\"\"\")";
+
+	protected static final int WARMUP = 200000;
+	protected static final int ITERATIONS = 1000000;
+
+	// leaves some room for the measurement itself, a single allocation per read would be megabytes
+	protected static final long TOLERANCE = 4096;
+
+	protected long sink;
+
+	@Test
+	public void noCopy()
+	{
+		assertNoAllocation(UDTValue.create(LITERAL));
+	}
+
+	@Test
+	public void utf8()
+	{
+		assertNoAllocation(UDTValue.create(LITERAL.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void tape()
+	{
+		assertNoAllocation(UDTValue.createTape(LITERAL));
+	}
+
+	@Test
+	public void binary()
+	{
+		CompositeTypeDescriptor type = new CompositeTypeDescriptor("t", 1, 2)
+			.add(PgOid.INT4)
+			.add(PgOid.INT8)
+			.add(PgOid.BOOL)
+			.add(PgOid.FLOAT8)
+			.add(PgOid.INT4);
+
+		CustomType t = new CustomType();
+
+		t.setInt(1, 123);
+		t.setLong(2, -456);
+		t.setBoolean(3, true);
+		t.setDouble(4, 1.25);
+		t.set(5, (Object) null);
+
+		assertNoAllocation(UDTValue.createBinary(t.toBinary(type).getBytes()));
+	}
+
+	protected void assertNoAllocation(UDTValue v)
+	{
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+		assertTrue(mx.isThreadAllocatedMemorySupported());
+
+		long id = Thread.currentThread().getId();
+
+		// indexes the level and lets the JIT compile the getters
+		for(int i = 0; i < WARMUP; i++)
+		{
+			read(v);
+		}
+
+		long before = mx.getThreadAllocatedBytes(id);
+
+		for(int i = 0; i < ITERATIONS; i++)
+		{
+			read(v);
+		}
+
+		long allocated = mx.getThreadAllocatedBytes(id) - before;
+
+		assertEquals((123 - 456 + 1 + 1 + 1) * (long) (WARMUP + ITERATIONS), sink);
+		assertTrue(v.getClass().getSimpleName() + " allocated " + allocated + " bytes", allocated < TOLERANCE);
+	}
+
+	protected void read(UDTValue v)
+	{
+		sink += v.getInt(1) + v.getLong(2) + (v.getBoolean(3) ? 1 : 0) + (long) v.getDouble(4) + (v.isNull(5) ? 1 : 0) + v.getInt(5);
+	}
+}
@@ -0,0 +1,174 @@
+package org.ketsu.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * The COPY binary format has a header, a field count and length-prefixed
+ * fields for every row and a trailer, text is not escaped.
+ */
+public class CustomTypeBinaryCopyWriterTest
+{
+	// signature, flags and header extension length
+	protected static final int HEADER = 19;
+	// field count, length and an int4
+	protected static final int ROW = 10;
+
+	protected static final CompositeTypeDescriptor COLUMNS = new CompositeTypeDescriptor("t", 1, 2)
+		.add(PgOid.INT4)
+		.add(PgOid.TEXT)
+		.add(PgOid.INT4);
+
+	@Test
+	public void fields() throws IOException
+	{
+		CustomType row = new CustomType();
+
+		row.setInt(1, 7);
+		row.set(2, "tab\tline\nback\\slash");
+		row.setInt(3, -1);
+
+		DataInputStream in = read(write(65536, row));
+
+		assertEquals(3, in.readShort());
+		assertEquals(4, in.readInt());
+		assertEquals(7, in.readInt());
+
+		byte[] text = "tab\tline\nback\\slash".getBytes(StandardCharsets.UTF_8);
+		byte[] data = new byte[in.readInt()];
+
+		in.readFully(data);
+
+		assertArrayEquals(text, data);
+		assertEquals(4, in.readInt());
+		assertEquals(-1, in.readInt());
+		assertEquals(-1, in.readShort());
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void nulls() throws IOException
+	{
+		CustomType row = new CustomType();
+
+		row.setInt(1, 7);
+		row.set(2, (Object) null);
+		// 3 is not set
+
+		DataInputStream in = read(write(65536, row));
+
+		assertEquals(3, in.readShort());
+		assertEquals(4, in.readInt());
+		assertEquals(7, in.readInt());
+		assertEquals(-1, in.readInt());
+		assertEquals(-1, in.readInt());
+		assertEquals(-1, in.readShort());
+	}
+
+	@Test
+	public void chunks() throws IOException
+	{
+		CompositeTypeDescriptor columns = new CompositeTypeDescriptor("t", 1, 2).add(PgOid.INT4);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CustomTypeBinaryCopyWriter copy = new CustomTypeBinaryCopyWriter(out, columns, HEADER + 2 * ROW);
+
+		copy.writeRow(row(1));
+
+		assertEquals(0, out.size());
+
+		copy.writeRow(row(2));
+
+		assertEquals(HEADER + 2 * ROW, out.size());
+
+		copy.writeRow(row(3));
+
+		assertEquals(HEADER + 2 * ROW, out.size());
+
+		copy.flush();
+
+		assertEquals(HEADER + 3 * ROW, out.size());
+		assertEquals(3, copy.getRowCount());
+
+		copy.close();
+
+		DataInputStream in = read(out.toByteArray());
+
+		for(int i = 1; i <= 3; i++)
+		{
+			assertEquals(1, in.readShort());
+			assertEquals(4, in.readInt());
+			assertEquals(i, in.readInt());
+		}
+
+		assertEquals(-1, in.readShort());
+	}
+
+	protected static CustomType row(int v)
+	{
+		CustomType row = new CustomType();
+
+		row.setInt(1, v);
+
+		return row;
+	}
+
+	protected static byte[] write(int chunkSize, CustomType row) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try(CustomTypeBinaryCopyWriter copy = new CustomTypeBinaryCopyWriter(out, COLUMNS, chunkSize))
+		{
+			copy.writeRow(row);
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return the rows after the checked header
+	 */
+	protected static DataInputStream read(byte[] copy) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(copy));
+		byte[] signature = new byte[CustomTypeBinaryCopyWriter.SIGNATURE.length];
+
+		in.readFully(signature);
+
+		assertArrayEquals(CustomTypeBinaryCopyWriter.SIGNATURE, signature);
+		assertEquals(0, in.readInt());
+		assertEquals(0, in.readInt());
+
+		return in;
+	}
+}
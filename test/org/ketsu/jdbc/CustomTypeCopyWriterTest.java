@@ -0,0 +1,192 @@
+package org.ketsu.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * The COPY text format escapes backslashes, tabs and newlines on top of the
+ * composite escaping, NULL is \N and every row has all the columns.
+ */
+public class CustomTypeCopyWriterTest
+{
+	@Test
+	public void escaping() throws IOException
+	{
+		CustomType row = new CustomType();
+
+		row.set(1, "tab\there");
+		row.set(2, "line\nbreak");
+		row.set(3, "back\\slash");
+
+		assertEquals("tab\\there\tline\\nbreak\tback\\\\slash\n", write(3, row));
+	}
+
+	@Test
+	public void nested() throws IOException
+	{
+		CustomType inner = new CustomType();
+
+		inner.set(1, "a\\b");
+		inner.set(2, "say \"hi\"");
+
+		CustomTypeWriter w = new CustomTypeWriter();
+
+		inner.write(w);
+
+		CustomType row = new CustomType();
+
+		row.setInt(1, 1);
+		row.set(2, inner);
+
+		// the literal is escaped once more for COPY
+		assertEquals("1\t" + w.toString().replace("\\", "\\\\") + "\n", write(2, row));
+	}
+
+	@Test
+	public void nulls() throws IOException
+	{
+		CustomType row = new CustomType();
+
+		row.setInt(1, 1);
+		row.set(2, (Object) null);
+		// 3 is not set
+		row.set(4, "x");
+
+		assertEquals("1\t\\N\t\\N\tx\n", write(4, row));
+	}
+
+	@Test
+	public void trailingNulls() throws IOException
+	{
+		StringWriter out = new StringWriter();
+		CompositeTypeDescriptor columns = new CompositeTypeDescriptor("t", 1, 2)
+			.add(PgOid.INT4)
+			.add(PgOid.TEXT)
+			.add(PgOid.TEXT);
+
+		try(CustomTypeCopyWriter copy = new CustomTypeCopyWriter(out, columns))
+		{
+			CustomType row = new CustomType();
+
+			row.setInt(1, 1);
+			row.set(2, "x");
+
+			copy.writeRow(row);
+
+			row = new CustomType();
+
+			row.setInt(1, 2);
+			row.set(2, "y");
+			row.set(3, "z");
+
+			copy.writeRow(row);
+
+			copy.writeRow(new CustomType());
+		}
+
+		assertEquals("1\tx\t\\N\n2\ty\tz\n\\N\t\\N\t\\N\n", out.toString());
+	}
+
+	@Test
+	public void wideRow() throws IOException
+	{
+		StringWriter out = new StringWriter();
+		CustomTypeCopyWriter copy = new CustomTypeCopyWriter(out, 2, 16);
+		CustomType row = new CustomType();
+
+		row.setInt(1, 1);
+		row.setInt(3, 3);
+
+		try
+		{
+			copy.writeRow(row);
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+			// nothing of the row is written
+			copy.flush();
+
+			assertEquals("", out.toString());
+			assertEquals(0, copy.getRowCount());
+		}
+	}
+
+	@Test
+	public void chunks() throws IOException
+	{
+		StringWriter out = new StringWriter();
+		CustomTypeCopyWriter copy = new CustomTypeCopyWriter(out, 1, 10);
+
+		// 5 characters per row
+		copy.writeRow(row("abcd"));
+
+		assertEquals("", out.toString());
+
+		copy.writeRow(row("efgh"));
+
+		assertEquals("abcd\nefgh\n", out.toString());
+
+		copy.writeRow(row("ijkl"));
+
+		assertEquals("abcd\nefgh\n", out.toString());
+
+		copy.flush();
+
+		assertEquals("abcd\nefgh\nijkl\n", out.toString());
+		assertEquals(3, copy.getRowCount());
+
+		copy.close();
+
+		assertEquals("abcd\nefgh\nijkl\n", out.toString());
+	}
+
+	protected static CustomType row(String v)
+	{
+		CustomType row = new CustomType();
+
+		row.set(1, v);
+
+		return row;
+	}
+
+	protected static String write(int columns, CustomType row) throws IOException
+	{
+		StringWriter out = new StringWriter();
+
+		try(CustomTypeCopyWriter copy = new CustomTypeCopyWriter(out, columns, 16))
+		{
+			copy.writeRow(row);
+		}
+
+		return out.toString();
+	}
+}
@@ -0,0 +1,70 @@
+package org.ketsu.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * NULL elements in lists of boxed values stay NULL, they are not read as 0 or
+ * false.
+ */
+public class UDTDecoderTest
+{
+	public record Boxed(List<Integer> ints, List<Long> longs, List<Double> doubles, List<Boolean> flags) {}
+
+	@Test
+	public void nullElements()
+	{
+		String literal = "(\"{1,NULL,3}\",\"{NULL,2}\",\"{0.5,NULL}\",\"{t,NULL,f}\")";
+
+		for(UDTValue v : new UDTValue[] {UDTValue.create(literal), UDTValue.createTape(literal)})
+		{
+			Boxed b = v.toObject(Boxed.class);
+
+			assertEquals(Arrays.asList(1, null, 3), b.ints());
+			assertEquals(Arrays.asList(null, 2L), b.longs());
+			assertEquals(Arrays.asList(0.5, null), b.doubles());
+			assertEquals(Arrays.asList(true, null, false), b.flags());
+		}
+	}
+
+	@Test
+	public void nullList()
+	{
+		Boxed b = UDTValue.create("(,\"{}\",,)").toObject(Boxed.class);
+
+		assertNull(b.ints());
+		assertEquals(Arrays.asList(), b.longs());
+		assertNull(b.doubles());
+		assertNull(b.flags());
+	}
+}
@@ -0,0 +1,142 @@
+package org.ketsu.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Quoted elements are values unless they are entered, a quoted string that
+ * looks like a type or an array must not be parsed as one.
+ */
+public class UDTReaderTest
+{
+	@Test
+	public void quotedParentheses()
+	{
+		assertEquals("START_ROW VALUE[(555) 123-4567] VALUE[1] END", events(new UDTReader("(\"(555) 123-4567\",1)")));
+	}
+
+	@Test
+	public void quotedBraces()
+	{
+		assertEquals("START_ARRAY VALUE[{\"a\": 1}] VALUE[x] END", events(new UDTReader("{\"{\\\"a\\\": 1}\",x}")));
+	}
+
+	@Test
+	public void reader()
+	{
+		assertEquals("START_ROW VALUE[(555) 123-4567] VALUE[1] END", events(new UDTReader(new StringReader("(\"(555) 123-4567\",1)"))));
+	}
+
+	@Test
+	public void enterRow()
+	{
+		UDTReader r = new UDTReader("(1,\"(a,\"\"b c\"\")\",2)");
+
+		assertEquals(UDTReader.Event.START_ROW, r.next());
+		assertEquals(UDTReader.Event.VALUE, r.next());
+		assertEquals(UDTReader.Event.VALUE, r.next());
+		assertEquals(UDTReader.Event.START_ROW, r.enterRow());
+		assertEquals(2, r.getLevel());
+		assertEquals("VALUE[a] VALUE[b c] END VALUE[2] END", events(r));
+	}
+
+	@Test
+	public void enterArray()
+	{
+		UDTReader r = new UDTReader("(\"{x,NULL}\",y)");
+
+		r.next();
+		r.next();
+
+		assertEquals(UDTReader.Event.START_ARRAY, r.enterArray());
+		assertEquals("VALUE[x] NULL END VALUE[y] END", events(r));
+	}
+
+	@Test
+	public void enterString()
+	{
+		UDTReader r = new UDTReader("(\"(555) 123-4567\",1)");
+
+		r.next();
+		r.next();
+
+		try
+		{
+			r.enterArray();
+			fail();
+		}
+		catch(IllegalStateException e)
+		{
+			// the value can still be read
+			assertEquals("(555) 123-4567", r.getString());
+		}
+
+		assertEquals("VALUE[1] END", events(r));
+	}
+
+	@Test
+	public void unquotedDimensions()
+	{
+		assertEquals("START_ARRAY START_ARRAY VALUE[1] VALUE[2] END START_ARRAY VALUE[3] NULL END END", events(new UDTReader("{{1,2},{3,NULL}}")));
+	}
+
+	/**
+	 * @return the remaining events
+	 */
+	protected static String events(UDTReader r)
+	{
+		StringBuilder ret = new StringBuilder();
+
+		while(r.hasNext())
+		{
+			UDTReader.Event e = r.next();
+
+			if(ret.length() > 0)
+			{
+				ret.append(' ');
+			}
+
+			if(e == UDTReader.Event.VALUE)
+			{
+				ret.append(r.isNull() ? "NULL" : "VALUE[" + r.getString() + "]");
+			}
+			else
+			{
+				ret.append(e);
+			}
+		}
+
+		assertFalse(r.hasNext());
+
+		return ret.toString();
+	}
+}
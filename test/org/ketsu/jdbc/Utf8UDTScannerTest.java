@@ -0,0 +1,111 @@
+package org.ketsu.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014, Lauri Keel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * The UTF-8 scanner works on the bytes, but the values it returns must be the
+ * decoded characters, also as a CharSequence.
+ */
+public class Utf8UDTScannerTest
+{
+	@Test
+	public void nonAscii()
+	{
+		UDTValue v = create("(\"héllo wörld\",1)");
+
+		assertSequence("héllo wörld", v.getValue(1).toCharSequence());
+		assertEquals("héllo wörld", v.getString(1));
+		assertEquals(1, v.getInt(2));
+	}
+
+	@Test
+	public void unquoted()
+	{
+		UDTValue v = create("(héllo,€)");
+
+		assertSequence("héllo", v.getValue(1).toCharSequence());
+		assertSequence("€", v.getValue(2).toCharSequence());
+	}
+
+	@Test
+	public void escaped()
+	{
+		UDTValue v = create("(\"a\\\"é\\\\\",x)");
+
+		assertSequence("a\"é\\", v.getValue(1).toCharSequence());
+	}
+
+	@Test
+	public void ascii()
+	{
+		UDTValue v = create("(\"hello world\",abc)");
+
+		assertSequence("hello world", v.getValue(1).toCharSequence());
+		assertSequence("bc", v.getValue(2).toCharSequence().subSequence(1, 3));
+	}
+
+	@Test
+	public void array()
+	{
+		UDTValue v = create("{ä,\"ö ü\",NULL}");
+
+		assertSequence("ä", v.getValue(1).toCharSequence());
+		assertSequence("ö ü", v.getValue(2).toCharSequence());
+		assertEquals(null, v.getString(3));
+	}
+
+	@Test
+	public void tape()
+	{
+		byte[] bytes = "(\"héllo wörld\",\"{ä,ö}\")".getBytes(StandardCharsets.UTF_8);
+		UDTValue v = new UDTTape(new Utf8UDTScanner(bytes)).getRoot();
+
+		assertSequence("héllo wörld", v.getValue(1).toCharSequence());
+		assertSequence("ö", v.getValue(2).getValue(2).toCharSequence());
+	}
+
+	protected static UDTValue create(String literal)
+	{
+		return UDTValue.create(literal.getBytes(StandardCharsets.UTF_8));
+	}
+
+	protected static void assertSequence(String expected, CharSequence actual)
+	{
+		assertEquals(expected.length(), actual.length());
+
+		for(int i = 0; i < expected.length(); i++)
+		{
+			assertEquals(expected.charAt(i), actual.charAt(i));
+		}
+
+		assertEquals(expected, actual.toString());
+	}
+}